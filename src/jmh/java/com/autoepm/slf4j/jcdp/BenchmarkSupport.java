@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Setup shared by the logging path benchmarks.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /** a console that keeps the cost of System.out but not of the terminal
+     *
+     * @return {@link PrintStream} discarding everything
+     */
+    static PrintStream nullConsole() {
+        return new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }, true);
+    }
+
+    /** set properties so that INFO events go to console, file or both
+     *
+     * @param destination "console", "file" or "both"
+     * @param filePath log file, e.g. /dev/null or a file on tmpfs
+     */
+    static void configure(String destination, String filePath) {
+        boolean console = !"file".equals(destination);
+        boolean file = !"console".equals(destination);
+        System.setProperty("jcdp.level", console ? "INFO" : "ERROR");
+        System.setProperty("jcdp.file.enabled", String.valueOf(file));
+        System.setProperty("jcdp.file.level", "INFO");
+        System.setProperty("jcdp.file.path", filePath);
+    }
+}
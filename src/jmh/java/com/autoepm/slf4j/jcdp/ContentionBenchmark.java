@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One logger shared by 1 to 64 threads, synchronously or through the asynchronous writer.
+ * Scores are per operation on each thread, so flat scores mean linear scaling; in async mode
+ * the buffer blocks when full, so they include the writer thread keeping up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+
+    @Param({"console", "file", "both"})
+    public String destination;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    @Param({"/dev/null"})
+    public String filePath;
+
+    private PrintStream stdout;
+    private JcdpAdapterFactory factory;
+    private Logger logger;
+    private String user = "alice";
+
+    @Setup
+    public void setUp() {
+        stdout = System.out;
+        System.setOut(BenchmarkSupport.nullConsole());
+        BenchmarkSupport.configure(destination, filePath);
+        System.setProperty("jcdp.async.enabled", String.valueOf(async));
+        factory = new JcdpAdapterFactory();
+        logger = factory.getLogger("com.example.Contention");
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.shutdown();
+        System.clearProperty("jcdp.async.enabled");
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void threads01() {
+        logger.info("request handled for {}", user);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void threads04() {
+        logger.info("request handled for {}", user);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void threads16() {
+        logger.info("request handled for {}", user);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void threads64() {
+        logger.info("request handled for {}", user);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of log calls below the enabled level, which should neither format nor allocate.
+ * Run with {@code -prof gc} and check that gc.alloc.rate.norm is ~0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DisabledLevelBenchmark {
+
+    private Logger logger;
+    private Object arg1 = new Object();
+    private Object arg2 = 42;
+
+    @Setup
+    public void setUp() {
+        System.setProperty("jcdp.level", "INFO");
+        System.setProperty("jcdp.file.enabled", "false");
+        logger = new JcdpAdapterFactory().getLogger("com.example.Disabled");
+    }
+
+    @Benchmark
+    public void debugNoArgs() {
+        logger.debug("disabled");
+    }
+
+    @Benchmark
+    public void debugOneArg() {
+        logger.debug("x={}", arg1);
+    }
+
+    @Benchmark
+    public void debugTwoArgs() {
+        logger.debug("x={} y={}", arg1, arg2);
+    }
+
+    @Benchmark
+    public void traceVarargs() {
+        // the varargs array is allocated by the caller; escape analysis usually removes it
+        logger.trace("x={} y={} z={}", arg1, arg2, arg1);
+    }
+}
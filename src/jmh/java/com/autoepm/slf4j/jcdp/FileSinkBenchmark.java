@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import com.diogonunes.jcdp.bw.Printer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * File output from several threads: memory-mapped and buffered sinks against the JCDP file {@link Printer}.
+ * Files are created in java.io.tmpdir, which is best pointed at a tmpfs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class FileSinkBenchmark {
+
+    private static final String LINE = "2019-04-02 12:00:00 INFO com.example.Service - handled request 42 in 3 ms";
+
+    private File mmapFile;
+    private File bufferedFile;
+    private File printerFile;
+    private MappedFileSink mmap;
+    private FileSink buffered;
+    private Printer printer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mmapFile = File.createTempFile("bench_", "_mmap.log");
+        bufferedFile = File.createTempFile("bench_", "_buffered.log");
+        printerFile = File.createTempFile("bench_", "_printer.log");
+        mmap = new MappedFileSink(mmapFile.getCanonicalPath(), MappedFileSink.DEFAULT_REGION_SIZE);
+        buffered = FileSink.acquire(bufferedFile);
+        buffered.configure(null, FileSink.DEFAULT_BUFFER_SIZE, 1000, JcdpLogLevel.ERROR, null);
+        printer = new Printer.Builder(Printer.Types.FILE)
+                .level(JcdpLogLevel.TRACE.getLevel())
+                .withFile(printerFile).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mmap.close();
+        buffered.release();
+        mmapFile.delete();
+        bufferedFile.delete();
+        printerFile.delete();
+    }
+
+    @Benchmark
+    public void mmap() {
+        mmap.write(LINE, JcdpLogLevel.INFO);
+    }
+
+    @Benchmark
+    public void buffered() {
+        buffered.write(LINE, JcdpLogLevel.INFO);
+    }
+
+    @Benchmark
+    public void jcdpPrinter() {
+        printer.debugPrintln(LINE, JcdpLogLevel.INFO.getLevel());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enabled log calls with and without {@code jcdp.gcfree}, to console and /dev/null as file,
+ * optionally printing MDC values.
+ * Run with {@code -prof gc}: in garbage-free mode gc.alloc.rate.norm should be close to 0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GcFreeBenchmark {
+
+    @Param({"false", "true"})
+    public boolean gcFree;
+
+    @Param({"", "requestId,tenant"})
+    public String mdcKeys;
+
+    private PrintStream stdout;
+    private JcdpAdapterFactory factory;
+    private Logger logger;
+    private Integer count = 42;
+    private String user = "alice";
+
+    @Setup
+    public void setUp() {
+        // keep the console cost, but not the terminal
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }, true));
+        System.setProperty("jcdp.level", "INFO");
+        System.setProperty("jcdp.file.enabled", "true");
+        System.setProperty("jcdp.file.path", "/dev/null");
+        System.setProperty("jcdp.gcfree", String.valueOf(gcFree));
+        System.setProperty("jcdp.mdc.keys", mdcKeys);
+        factory = new JcdpAdapterFactory();
+        logger = factory.getLogger("com.example.GcFree");
+        // MDC is per thread; setup runs on the (single) benchmark thread
+        JcdpMDCAdapter mdc = new JcdpMDCAdapter();
+        mdc.put("requestId", "4f1c2a");
+        mdc.put("tenant", "acme");
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.shutdown();
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void noArgs() {
+        logger.info("request handled");
+    }
+
+    @Benchmark
+    public void oneArg() {
+        logger.info("request handled for {}", user);
+    }
+
+    @Benchmark
+    public void twoArgs() {
+        logger.info("request handled for {} with {} items", user, count);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import com.diogonunes.jcdp.color.ColoredPrinter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering a line timestamp: the JCDP printer's formatted date against the cached
+ * {@link TimestampFormatter} styles, from several threads sharing the cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TimestampBenchmark {
+
+    private final ColoredPrinter printer = new ColoredPrinter.Builder(1, true).build();
+    private final TimestampFormatter jcdp = TimestampFormatter.of("jcdp");
+    private final TimestampFormatter iso8601 = TimestampFormatter.of("iso8601");
+    private final TimestampFormatter epoch = TimestampFormatter.of("epoch");
+
+    @State(Scope.Thread)
+    public static class Output {
+        final ByteBuffer bytes = ByteBuffer.allocate(64);
+    }
+
+    @Benchmark
+    public String jcdpPrinter() {
+        return printer.getDateFormatted();
+    }
+
+    @Benchmark
+    public ByteBuffer cachedJcdp(Output out) {
+        out.bytes.clear();
+        jcdp.format(System.currentTimeMillis(), out.bytes);
+        return out.bytes;
+    }
+
+    @Benchmark
+    public ByteBuffer cachedIso8601(Output out) {
+        out.bytes.clear();
+        iso8601.format(System.currentTimeMillis(), out.bytes);
+        return out.bytes;
+    }
+
+    @Benchmark
+    public ByteBuffer epochMillis(Output out) {
+        out.bytes.clear();
+        epoch.format(System.currentTimeMillis(), out.bytes);
+        return out.bytes;
+    }
+}
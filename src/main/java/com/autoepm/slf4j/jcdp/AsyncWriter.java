@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.helpers.Util;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background writer for asynchronous mode ({@code jcdp.async.enabled=true}).
+ * Callers enqueue events in a {@link RingBuffer}; a single daemon thread
+ * drains it and prints through each event's {@link JcdpAdapter}.
+ */
+final class AsyncWriter implements RingBuffer.Handler, Runnable {
+
+    /** what to do when the buffer is full */
+    enum Overflow {
+        /** wait for space */
+        BLOCK,
+        /** drop TRACE/DEBUG once the buffer is 3/4 full, wait for space for anything else */
+        DROP_DEBUG,
+        /** drop the event */
+        DISCARD
+    }
+
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000;
+
+    private final RingBuffer buffer;
+    private final Overflow overflow;
+    private final int debugLimit;
+    private final Thread thread;
+    private final AtomicLong dropped = new AtomicLong();
+    // callers currently in submit(); close waits for them before the final drain
+    private final AtomicInteger producers = new AtomicInteger();
+    private volatile boolean running = true;
+    private volatile boolean sleeping = false;
+
+    /** Constructor. Starts the writer thread.
+     *
+     * @param capacity buffer capacity, rounded up to a power of two
+     * @param overflow {@link Overflow} policy
+     */
+    AsyncWriter(int capacity, Overflow overflow) {
+        this.buffer = new RingBuffer(capacity);
+        this.overflow = overflow;
+        this.debugLimit = buffer.capacity() - buffer.capacity() / 4;
+        this.thread = new Thread(this, "jcdp-async-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** queue an event, applying the overflow policy if the buffer is full.
+     * Once the writer is closed, events are printed on the caller's thread.
+     * So are events logged by the writer thread itself, which could otherwise wait for itself forever.
+     */
+    void submit(JcdpAdapter adapter, JcdpLogLevel level, String msg, Throwable t,
+                long millis, String threadName, Map<String, String> mdc) {
+        if (Thread.currentThread() == thread) {
+            adapter.print(level, msg, t, millis, threadName, mdc);
+            return;
+        }
+        // announce ourselves before checking running, so close() either waits for us or we see it
+        producers.incrementAndGet();
+        try {
+            if (enqueue(adapter, level, msg, t, millis, threadName, mdc)) return;
+        } finally {
+            producers.decrementAndGet();
+        }
+        adapter.print(level, msg, t, millis, threadName, mdc);
+    }
+
+    /** @return true if the event was queued or dropped, false if the writer is closed */
+    private boolean enqueue(JcdpAdapter adapter, JcdpLogLevel level, String msg, Throwable t,
+                            long millis, String threadName, Map<String, String> mdc) {
+        boolean droppable = overflow == Overflow.DISCARD
+                || (overflow == Overflow.DROP_DEBUG && level.getLevel() >= JcdpLogLevel.DEBUG.getLevel());
+        if (overflow == Overflow.DROP_DEBUG && droppable && buffer.size() >= debugLimit) {
+            dropped.incrementAndGet();
+            return true;
+        }
+        while (running) {
+            if (buffer.offer(adapter, level, msg, t, millis, threadName, mdc)) {
+                if (sleeping) LockSupport.unpark(thread);
+                return true;
+            }
+            if (droppable) {
+                dropped.incrementAndGet();
+                return true;
+            }
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+        return false;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            if (buffer.drain(this, BATCH_SIZE) > 0) continue;
+            if (!running) break;
+            sleeping = true;
+            // re-check after announcing we sleep, so a concurrent submit either is seen here or unparks us
+            if (buffer.isEmpty() && running) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            sleeping = false;
+        }
+    }
+
+    @Override
+    public void onEvent(JcdpAdapter adapter, JcdpLogLevel level, String msg, Throwable t,
+                        long millis, String threadName, Map<String, String> mdc) {
+        try {
+            adapter.print(level, msg, t, millis, threadName, mdc);
+        } catch (RuntimeException e) {
+            // never let a bad event kill the writer thread
+            Util.report("Failed to write log event", e);
+        }
+    }
+
+    /** stop accepting events, then flush everything still in the buffer. */
+    void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!thread.isAlive()) {
+            // callers that saw running before it changed may still be enqueuing; they are quick to finish
+            while (producers.get() > 0) {
+                Thread.yield();
+            }
+            // pick up anything enqueued while the writer was finishing
+            buffer.drain(this, Integer.MAX_VALUE);
+        }
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    /** @return approximate number of events waiting to be written */
+    int getQueueDepth() {
+        return buffer.size();
+    }
+
+    Overflow getOverflow() {
+        return overflow;
+    }
+
+    /** @return number of events dropped by the overflow policy so far */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.helpers.Util;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Where console lines go. Each line arrives fully assembled in the caller's {@link EventBuffer}
+ * and is written in one call:
+ * <ul>
+ *     <li>{@link #STREAM} writes to {@code System.out}/{@code System.err} as they are at the time,
+ *     so {@code System.setOut()} keeps working;</li>
+ *     <li>{@link #direct()} writes straight to the stdout/stderr file descriptors,
+ *     skipping the {@code PrintStream} monitor, its buffer copy and flush.</li>
+ * </ul>
+ * Direct writes hold a {@link ReentrantLock}, so a short line cannot land inside a long one
+ * that the OS splits. It is rarely contended, and does not pin virtual threads.
+ */
+final class ConsoleSink {
+
+    static final ConsoleSink STREAM = new ConsoleSink(null, null);
+
+    /** created on first use; never closed, as that would close stdout and stderr */
+    private static final class Direct {
+        static final ConsoleSink INSTANCE = new ConsoleSink(
+                new FileOutputStream(FileDescriptor.out), new FileOutputStream(FileDescriptor.err));
+    }
+
+    private final FileOutputStream out;
+    private final FileOutputStream err;
+    // held for every direct write, so lines never interleave
+    private final ReentrantLock lock = new ReentrantLock();
+    // set after a failed direct write, to fall back to System.out/err
+    private volatile boolean failed = false;
+
+    private ConsoleSink(FileOutputStream out, FileOutputStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /** @return sink writing to the stdout and stderr file descriptors */
+    static ConsoleSink direct() {
+        return Direct.INSTANCE;
+    }
+
+    /** write the line assembled in a buffer
+     *
+     * @param buffer {@link EventBuffer} holding the line
+     * @param toStderr true to write to stderr rather than stdout
+     */
+    void write(EventBuffer buffer, boolean toStderr) {
+        byte[] line = buffer.lineBytes();
+        int length = buffer.lineLength();
+        if (out == null || failed) {
+            (toStderr ? System.err : System.out).write(line, 0, length);
+            return;
+        }
+        lock.lock();
+        try {
+            (toStderr ? err : out).write(line, 0, length);
+        } catch (IOException e) {
+            failed = true;
+            Util.report("Cannot write to the console directly, using System.out from now on", e);
+            (toStderr ? System.err : System.out).write(line, 0, length);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
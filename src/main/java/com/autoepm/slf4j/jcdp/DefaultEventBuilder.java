@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * {@link JcdpEventBuilder} for an enabled level. Only created once the level check
+ * has passed; suppliers are kept until the event gets through suppression and rate limits.
+ */
+class DefaultEventBuilder implements JcdpEventBuilder {
+
+    /** builder for disabled levels, ignoring everything */
+    static final JcdpEventBuilder DISABLED = new JcdpEventBuilder() {
+        @Override
+        public JcdpEventBuilder setMessage(String message) {
+            return this;
+        }
+
+        @Override
+        public JcdpEventBuilder setMessage(Supplier<String> messageSupplier) {
+            return this;
+        }
+
+        @Override
+        public JcdpEventBuilder addArgument(Object argument) {
+            return this;
+        }
+
+        @Override
+        public JcdpEventBuilder addArgument(Supplier<?> argumentSupplier) {
+            return this;
+        }
+
+        @Override
+        public JcdpEventBuilder addMarker(Marker marker) {
+            return this;
+        }
+
+        @Override
+        public JcdpEventBuilder setCause(Throwable cause) {
+            return this;
+        }
+
+        @Override
+        public void log() {
+        }
+
+        @Override
+        public void log(String message) {
+        }
+    };
+
+    /** an argument supplier, called once the event is known to be logged */
+    private static final class Deferred {
+        final Supplier<?> supplier;
+
+        Deferred(Supplier<?> supplier) {
+            this.supplier = supplier;
+        }
+    }
+
+    private final JcdpAdapter logger;
+    private final JcdpLogLevel level;
+    private String message;
+    private Supplier<String> messageSupplier;
+    private List<Object> arguments;
+    private Marker marker;
+    private Throwable cause;
+
+    DefaultEventBuilder(JcdpAdapter logger, JcdpLogLevel level) {
+        this.logger = logger;
+        this.level = level;
+    }
+
+    @Override
+    public JcdpEventBuilder setMessage(String message) {
+        this.message = message;
+        this.messageSupplier = null;
+        return this;
+    }
+
+    @Override
+    public JcdpEventBuilder setMessage(Supplier<String> messageSupplier) {
+        this.message = null;
+        this.messageSupplier = messageSupplier;
+        return this;
+    }
+
+    @Override
+    public JcdpEventBuilder addArgument(Object argument) {
+        if (arguments == null) arguments = new ArrayList<>(4);
+        arguments.add(argument);
+        return this;
+    }
+
+    @Override
+    public JcdpEventBuilder addArgument(Supplier<?> argumentSupplier) {
+        return addArgument(argumentSupplier == null ? null : new Deferred(argumentSupplier));
+    }
+
+    /** events carry a single marker: a later call replaces the previous one */
+    @Override
+    public JcdpEventBuilder addMarker(Marker marker) {
+        this.marker = marker;
+        return this;
+    }
+
+    @Override
+    public JcdpEventBuilder setCause(Throwable cause) {
+        this.cause = cause;
+        return this;
+    }
+
+    @Override
+    public void log() {
+        logger.logEvent(level, marker, message, messageSupplier,
+                arguments == null ? null : arguments.toArray(), cause);
+    }
+
+    @Override
+    public void log(String message) {
+        setMessage(message);
+        log();
+    }
+
+    /** call the argument suppliers, replacing them with their values
+     *
+     * @param arguments arguments from {@link #log()}, can be null
+     */
+    static void evaluate(Object[] arguments) {
+        if (arguments == null) return;
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] instanceof Deferred) arguments[i] = ((Deferred) arguments[i]).supplier.get();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Per-thread scratch space: text buffers to format into (used by {@code jcdp.gcfree=true}),
+ * a char buffer to hand text to encoders, and a byte buffer with a cached encoder
+ * to build console lines.
+ */
+final class EventBuffer {
+
+    // buffers that grew past this are replaced, so one huge event does not pin memory forever
+    private static final int MAX_RETAINED_CHARS = 16 * 1024;
+    // there can be millions of virtual threads, so they keep much less
+    private static final int MAX_RETAINED_CHARS_VIRTUAL = 1024;
+    private static final ThreadLocal<EventBuffer> BUFFERS = ThreadLocal.withInitial(EventBuffer::new);
+
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private StringBuilder text = new StringBuilder(256);
+    // set while an event is formatted into text, which can run toString() methods that log themselves
+    private boolean textInUse;
+    private StringBuilder prefix = new StringBuilder(64);
+    private StringBuilder record = new StringBuilder(512);
+    private char[] chars = new char[256];
+    private CharBuffer charView = CharBuffer.wrap(chars);
+    // set while charView is being read
+    private boolean charsInUse;
+    private ByteBuffer bytes = ByteBuffer.allocate(1024);
+    private final int maxRetainedChars = VirtualThreads.isCurrentVirtual()
+            ? MAX_RETAINED_CHARS_VIRTUAL : MAX_RETAINED_CHARS;
+
+    private EventBuffer() {
+    }
+
+    static EventBuffer get() {
+        return BUFFERS.get();
+    }
+
+    /** empty text buffer to format an event into, to hand back with {@link #release(StringBuilder)}.
+     * If this thread is already formatting an event, e.g. because an argument's toString() logs,
+     * a new buffer is returned instead so the outer event is not overwritten.
+     *
+     * @return {@link StringBuilder} instance
+     */
+    StringBuilder text() {
+        if (textInUse) return new StringBuilder(256);
+        textInUse = true;
+        return text = clear(text);
+    }
+
+    /** done with a buffer from {@link #text()}
+     *
+     * @param sb {@link StringBuilder} returned by {@link #text()}
+     */
+    void release(StringBuilder sb) {
+        if (sb == text) textInUse = false;
+    }
+
+    /** @return empty buffer for the MDC values printed in front of a message */
+    StringBuilder prefix() {
+        return prefix = clear(prefix);
+    }
+
+    /** @return empty buffer to encode a whole record into, e.g. as JSON */
+    StringBuilder record() {
+        return record = clear(record);
+    }
+
+    private StringBuilder clear(StringBuilder sb) {
+        if (sb.capacity() > maxRetainedChars) {
+            return new StringBuilder(256);
+        }
+        sb.setLength(0);
+        return sb;
+    }
+
+    /** copy text into the reusable char buffer, for encoders that need a {@link CharBuffer}.
+     * Hand the view back with {@link #release(CharBuffer)} once it has been read;
+     * a nested call before that gets a view of its own.
+     *
+     * @param cs {@link CharSequence} to copy
+     * @return {@link CharBuffer} positioned over a copy of the text
+     */
+    CharBuffer wrap(CharSequence cs) {
+        if (charsInUse) return CharBuffer.wrap(cs.toString());
+        charsInUse = true;
+        int length = cs.length();
+        if (chars.length < length || chars.length > maxRetainedChars) {
+            chars = new char[Math.max(256, length)];
+            charView = CharBuffer.wrap(chars);
+        }
+        if (cs instanceof String) {
+            ((String) cs).getChars(0, length, chars, 0);
+        } else if (cs instanceof StringBuilder) {
+            ((StringBuilder) cs).getChars(0, length, chars, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                chars[i] = cs.charAt(i);
+            }
+        }
+        charView.clear();
+        charView.limit(length);
+        return charView;
+    }
+
+    /** done with a view from {@link #wrap(CharSequence)}
+     *
+     * @param view {@link CharBuffer} returned by {@link #wrap(CharSequence)}
+     */
+    void release(CharBuffer view) {
+        if (view == charView) charsInUse = false;
+    }
+
+    /** start building an output line in the byte buffer.
+     *
+     * @param prefix pre-encoded bytes to start with
+     */
+    void beginLine(byte[] prefix) {
+        if (bytes.capacity() > maxRetainedChars * 4) bytes = ByteBuffer.allocate(1024);
+        bytes.clear();
+        ensureRemaining(prefix.length);
+        bytes.put(prefix);
+    }
+
+    /** encode text at the end of the line being built.
+     *
+     * @param cs {@link CharSequence} to append
+     */
+    void append(CharSequence cs) {
+        ensureRemaining((int) (cs.length() * encoder.maxBytesPerChar()));
+        CharBuffer in = wrap(cs);
+        encoder.reset();
+        encoder.encode(in, bytes, true);
+        encoder.flush(bytes);
+        release(in);
+    }
+
+    /** append a timestamp to the line being built.
+     *
+     * @param timestamps {@link TimestampFormatter} to render with
+     * @param millis time to render
+     */
+    void appendTimestamp(TimestampFormatter timestamps, long millis) {
+        ensureRemaining(timestamps.maxLength());
+        timestamps.format(millis, bytes);
+    }
+
+    /** append pre-encoded bytes to the line being built.
+     *
+     * @param raw bytes to append
+     */
+    void append(byte[] raw) {
+        ensureRemaining(raw.length);
+        bytes.put(raw);
+    }
+
+    /** @return backing array of the line; valid bytes run from 0 to {@link #lineLength()} */
+    byte[] lineBytes() {
+        return bytes.array();
+    }
+
+    int lineLength() {
+        return bytes.position();
+    }
+
+    private void ensureRemaining(int needed) {
+        if (bytes.remaining() >= needed) return;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(bytes.capacity() * 2, bytes.position() + needed));
+        bytes.flip();
+        bigger.put(bytes);
+        bytes = bigger;
+    }
+}
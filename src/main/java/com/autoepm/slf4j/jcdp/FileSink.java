@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.helpers.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffered log file, shared through {@link SinkRegistry} by every logger writing to the same path.
+ * <p>
+ * Events are encoded into a large buffer under a single lock, so lines never interleave.
+ * The buffer goes to disk in one write when it is full, every flush interval,
+ * or right away for events at or above the flush level.
+ * The lock is a {@link ReentrantLock} rather than a monitor, so virtual threads waiting
+ * on disk I/O release their carrier thread.
+ * <p>
+ * With a {@link RollingPolicy}, the file is renamed and reopened under the same lock
+ * when it grows too big or its period ends; compression happens in the background.
+ */
+final class FileSink implements LogSink {
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int MIN_BUFFER_SIZE = 1024;
+    private static final String NEWLINE = System.lineSeparator();
+    // one thread runs the interval flushes of all sinks
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "jcdp-file-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String path;
+    private final File file;
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel; // guarded by lock
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE); // guarded by lock
+    private TimestampFormatter timestamps = null; // guarded by lock
+    private int flushLevel = JcdpLogLevel.ERROR.getLevel(); // guarded by lock
+    private long flushIntervalMillis = 0; // guarded by lock
+    private ScheduledFuture<?> flushTask; // guarded by lock
+    private boolean closed = false; // guarded by lock
+    private RollingPolicy rolling; // guarded by lock
+    private long size; // guarded by lock
+    private long written; // guarded by lock, across rolls
+    private String period; // guarded by lock
+    private long nextPeriodCheck; // guarded by lock
+
+    private FileSink(String path) throws IOException {
+        this.path = path;
+        this.file = new File(path);
+        open();
+    }
+
+    private void open() throws IOException {
+        Path target = file.toPath();
+        if (target.getParent() != null) Files.createDirectories(target.getParent());
+        channel = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = channel.size();
+    }
+
+    /** get the shared sink for a file, opening it if nobody else has.
+     *
+     * @param file {@link File} to append to
+     * @return shared {@link FileSink}; call {@link #release()} when done with it
+     * @throws IOException if the file cannot be opened
+     */
+    static FileSink acquire(File file) throws IOException {
+        return SinkRegistry.acquire(file, FileSink.class, FileSink::new);
+    }
+
+    /** give back a reference obtained from {@link #acquire(File)}; the last one closes the file. */
+    void release() {
+        SinkRegistry.release(this);
+    }
+
+    /** apply settings. Since the sink is shared, the last logger configured wins,
+     * which is fine as long as all settings come from the same properties.
+     *
+     * @param timestamps {@link TimestampFormatter} for line prefixes, or null for none
+     * @param bufferSize size in bytes of the write buffer
+     * @param flushIntervalMillis how often buffered lines are written out, 0 to only flush when full
+     * @param flushLevel {@link JcdpLogLevel} at or above which every event is written out immediately
+     * @param rolling {@link RollingPolicy}, or null to never roll
+     */
+    void configure(TimestampFormatter timestamps, int bufferSize, long flushIntervalMillis,
+                   JcdpLogLevel flushLevel, RollingPolicy rolling) {
+        lock.lock();
+        try {
+            if (closed) return;
+            this.rolling = rolling;
+            if (rolling != null) {
+                // an existing file belongs to the period it was last written in
+                period = rolling.periodOf(size > 0 ? file.lastModified() : System.currentTimeMillis());
+                nextPeriodCheck = 0;
+            }
+            this.timestamps = timestamps;
+            this.flushLevel = flushLevel.getLevel();
+            bufferSize = Math.max(MIN_BUFFER_SIZE, bufferSize);
+            if (bufferSize != buffer.capacity()) {
+                flush();
+                buffer = ByteBuffer.allocateDirect(bufferSize);
+            }
+            if (flushIntervalMillis != this.flushIntervalMillis) {
+                if (flushTask != null) flushTask.cancel(false);
+                flushTask = flushIntervalMillis <= 0 ? null : FLUSHER.scheduleWithFixedDelay(
+                        this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+                this.flushIntervalMillis = flushIntervalMillis;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** append one event, followed by a newline.
+     *
+     * @param text event, can span several lines
+     * @param level {@link JcdpLogLevel} of the event
+     * @param millis time of the event
+     */
+    @Override
+    public void write(CharSequence text, JcdpLogLevel level, long millis) {
+        lock.lock();
+        try {
+            if (closed) return;
+            if (rolling != null) rollOnNewPeriod();
+            if (timestamps != null) {
+                if (buffer.remaining() <= timestamps.maxLength()) writeBuffer();
+                timestamps.format(millis, buffer);
+                buffer.put((byte) ' ');
+            }
+            encode(text);
+            encode(NEWLINE);
+            if (rolling != null && rolling.isTooBig(size + buffer.position())) {
+                roll(period);
+            } else if (level.getLevel() <= flushLevel) {
+                writeBuffer();
+            }
+        } catch (IOException e) {
+            Util.report("Failed to write to " + path, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** roll if the period changed; the period is only recomputed once per second */
+    private void rollOnNewPeriod() throws IOException {
+        long now = System.currentTimeMillis();
+        if (now < nextPeriodCheck) return;
+        nextPeriodCheck = now - now % 1000 + 1000;
+        String current = rolling.periodOf(now);
+        if (current.equals(period)) return;
+        if (size + buffer.position() > 0) roll(period);
+        period = current;
+    }
+
+    /** swap the file out: rename it to its archive name and reopen an empty one.
+     *
+     * @param archivedPeriod period the archived file belongs to
+     */
+    private void roll(String archivedPeriod) throws IOException {
+        writeBuffer();
+        channel.close();
+        File archive = rolling.nextArchive(archivedPeriod);
+        try {
+            File dir = archive.getAbsoluteFile().getParentFile();
+            if (dir != null) Files.createDirectories(dir.toPath());
+            Files.move(file.toPath(), archive.toPath());
+            rolling.archive(archive);
+        } catch (IOException e) {
+            Util.report("Failed to roll " + path + " to " + archive, e);
+        } finally {
+            open();
+        }
+    }
+
+    /** encode text into the buffer, writing it out whenever it fills up */
+    private void encode(CharSequence text) throws IOException {
+        EventBuffer scratch = EventBuffer.get();
+        CharBuffer in = scratch.wrap(text);
+        try {
+            encoder.reset();
+            while (encoder.encode(in, buffer, true).isOverflow()) {
+                writeBuffer();
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                writeBuffer();
+            }
+        } finally {
+            scratch.release(in);
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        size += buffer.remaining();
+        written += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void flush() {
+        lock.lock();
+        try {
+            if (closed) return;
+            writeBuffer();
+        } catch (IOException e) {
+            Util.report("Failed to flush " + path, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) return;
+            flush();
+            closed = true;
+            if (flushTask != null) flushTask.cancel(false);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Util.report("Failed to close " + path, e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getBytesWritten() {
+        lock.lock();
+        try {
+            return written;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+}
@@ -26,47 +26,280 @@ package com.autoepm.slf4j.jcdp;
 
 import com.diogonunes.jcdp.bw.Printer;
 import com.diogonunes.jcdp.color.ColoredPrinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
 import org.slf4j.helpers.FormattingTuple;
-import org.slf4j.helpers.MarkerIgnoringBase;
 import org.slf4j.helpers.MessageFormatter;
 
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.function.Supplier;
+
 /**
  * This is the adapter that SLF4J will instantiate and use.
- * It extends {@link org.slf4j.helpers.MarkerIgnoringBase} because
- * JCDP has no concept of Markers.
+ * Markers can filter events or route them to their own file, see jcdp.marker.* properties.
  */
-public class JcdpAdapter extends MarkerIgnoringBase {
+public class JcdpAdapter implements JcdpLogger, Serializable {
+
+    private static final long serialVersionUID = -1542405612390257364L;
 
     final static String FQCN = JcdpAdapter.class.getName();
-    private final ColoredPrinter[] printers;
-    private final JcdpLogLevel logLevel;
-    private boolean fileEnabled = false;
-    private Printer filePrinter;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(Charset.defaultCharset());
+    private static final byte[] RESET = "\u001B[0m".getBytes(Charset.defaultCharset());
+    private static final byte[] NONE = new byte[0];
+    private static final byte[] SPACE = " ".getBytes(Charset.defaultCharset());
+    private static final String[] NO_KEYS = new String[0];
+    private final String name;
+    // volatile so that JcdpAdapterFactory.reconfigure() is seen by every thread
+    private volatile ColoredPrinter[] printers;
+    private volatile JcdpLogLevel logLevel;
+    // logLevel as a primitive, for the console check
+    private volatile int consoleLevel;
+    private volatile Printer filePrinter;
+    private volatile LogSink fileSink;
+    private volatile int fileLevel;
+    // most verbose level any destination will print, checked by isXxxEnabled() and before formatting
+    private volatile int threshold;
+    private volatile AsyncWriter asyncWriter;
+    // garbage-free mode: format into per-thread buffers instead of Strings
+    private volatile boolean gcFree = false;
+    // console timestamps, null when disabled
+    private volatile TimestampFormatter timestamps;
+    // timestamp style for JSON records
+    private volatile TimestampFormatter timestampFormat = TimestampFormatter.DEFAULT;
+    private volatile boolean colorEnabled = true;
+    private volatile ConsoleSink console = ConsoleSink.STREAM;
+    // events at this level or more severe go to stderr; 0 for none
+    private volatile int stderrLevel = 0;
+    // ANSI color code of each level and reset code, pre-encoded; empty when colors are off
+    private volatile byte[][] colorCodes;
+    private volatile byte[] resetCode;
+    // MDC keys to print in front of each message
+    private volatile String[] mdcKeys = NO_KEYS;
+    private volatile MarkerRules markerRules = MarkerRules.NONE;
+    // write files as JSON lines rather than plain text
+    private volatile boolean fileJson = false;
+    // jcdp.sink.<NAME> destinations that apply to this logger, by level number
+    private volatile SinkRoutes.Route[][] routes = SinkRoutes.NO_ROUTES;
+    // most verbose level any route accepts, 0 for none
+    private volatile int routeLevel = 0;
+    // duplicate suppression and rate limiting, null when disabled
+    private volatile Suppressor suppressor;
+    private volatile RateLimiter rateLimiter;
+    private volatile TracebackRenderer traceback = TracebackRenderer.DEFAULT;
+    // null unless metrics are enabled; kept aside so counts survive them being switched off and on
+    private volatile JcdpMetrics.Counters metrics;
+    private JcdpMetrics.Counters metricsCounters;
 
     /** Constructor. One can provide an arbitrary number of printers,
      * up to the maximum number of different levels in {@link JcdpLogLevel}.
      * The order in which they are provided will match the order of levels.
      * Any missing printer will be created as a default one.
      *
+     * @param name logger name
      * @param level {@link JcdpLogLevel} the logger will be set to
      * @param printer {@link com.diogonunes.jcdp.color.ColoredPrinter} instances,
      *                                                                in order matching log levels.
      */
-    JcdpAdapter(JcdpLogLevel level, ColoredPrinter... printer) {
-        this.printers = new ColoredPrinter[6];
+    JcdpAdapter(String name, JcdpLogLevel level, ColoredPrinter... printer) {
+        this.name = name;
+        configure(level, printer);
+    }
+
+    /** (re)apply configuration to this logger. Used by {@link JcdpAdapterFactory#reconfigure()}
+     * so that cached loggers pick up property changes.
+     *
+     * @param level {@link JcdpLogLevel} the logger will be set to
+     * @param printer {@link com.diogonunes.jcdp.color.ColoredPrinter} instances, in order matching log levels.
+     */
+    void configure(JcdpLogLevel level, ColoredPrinter[] printer) {
+        ColoredPrinter[] newPrinters = new ColoredPrinter[6];
         // first slot is empty because level 0 would print all.
         // could reuse for file printer at some point
-        for (int i = 1; i < this.printers.length; i++) {
-            if (printer.length >= i + 1) {
-                this.printers[i] = printer[i];
+        for (int i = 1; i < newPrinters.length; i++) {
+            if (printer.length >= i + 1 && printer[i] != null) {
+                newPrinters[i] = printer[i];
             } else {
-                this.printers[i] = new ColoredPrinter.Builder(
-                        level.getLevel(), JcdpAdapterFactory.isTsEnabled()
+                newPrinters[i] = new ColoredPrinter.Builder(
+                        level.getLevel(), timestamps != null
                 ).build();
-                this.printers[i].setLevel(level.getLevel());
+                newPrinters[i].setLevel(level.getLevel());
             }
         }
-        logLevel = level;
+        this.printers = newPrinters;
+        renderColorCodes();
+        setLevel(level);
+    }
+
+    /** change the console level of this logger only, e.g. once resolved from jcdp.level.&lt;prefix&gt;
+     *
+     * @param level {@link JcdpLogLevel} the logger will be set to
+     */
+    void setLevel(JcdpLogLevel level) {
+        this.logLevel = level;
+        this.consoleLevel = level.getLevel();
+        updateThreshold();
+    }
+
+    JcdpLogLevel getLevel() {
+        return logLevel;
+    }
+
+    /** prefix console lines with the date, from jcdp.timestamp.enabled. Off until set.
+     *
+     * @param enabled boolean
+     * @param format {@link TimestampFormatter} to render with; also used for JSON records
+     */
+    void setTimestamps(boolean enabled, TimestampFormatter format) {
+        this.timestampFormat = format;
+        this.timestamps = enabled ? format : null;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /** like other SLF4J loggers, deserialize to the live logger of the same name
+     *
+     * @return {@link Logger} instance
+     * @throws ObjectStreamException never
+     */
+    protected Object readResolve() throws ObjectStreamException {
+        return LoggerFactory.getLogger(getName());
+    }
+
+    /** write log files as one JSON object per line (jcdp.file.format=json)
+     *
+     * @param fileJson boolean
+     */
+    void setFileJson(boolean fileJson) {
+        this.fileJson = fileJson;
+    }
+
+    /** filter and route events by marker
+     *
+     * @param rules {@link MarkerRules} instance
+     */
+    void setMarkerRules(MarkerRules rules) {
+        this.markerRules = rules == null ? MarkerRules.NONE : rules;
+    }
+
+    /** write to named sinks as well, e.g. an errors-only file.
+     * The caller stays responsible for releasing the sinks.
+     *
+     * @param routes from {@link SinkRoutes#compile(String)}, or null for none
+     */
+    void setRoutes(SinkRoutes.Route[][] routes) {
+        SinkRoutes.Route[][] compiled = routes == null ? SinkRoutes.NO_ROUTES : routes;
+        int level = 0;
+        for (int i = 1; i < compiled.length; i++) {
+            if (compiled[i].length > 0) level = i;
+        }
+        this.routes = compiled;
+        this.routeLevel = level;
+        updateThreshold();
+    }
+
+    /** print these MDC values in front of each message, e.g. "[requestId=42 tenant=acme] ".
+     * Keys with no value in the current thread are left out.
+     *
+     * @param keys MDC keys, in print order
+     */
+    void setMdcKeys(String[] keys) {
+        this.mdcKeys = keys == null ? NO_KEYS : keys;
+    }
+
+    /** turn ANSI colors on or off, e.g. when output is not a terminal.
+     *
+     * @param colorEnabled boolean
+     */
+    void setColorEnabled(boolean colorEnabled) {
+        this.colorEnabled = colorEnabled;
+        renderColorCodes();
+    }
+
+    /** choose where console lines are written
+     *
+     * @param console {@link ConsoleSink} instance
+     * @param stderrLevel {@link JcdpLogLevel} at or above which lines go to stderr, or null to use stdout only
+     */
+    void setConsole(ConsoleSink console, JcdpLogLevel stderrLevel) {
+        this.console = console;
+        this.stderrLevel = stderrLevel == null ? 0 : stderrLevel.getLevel();
+    }
+
+    /** encode each level's color code once, rather than on every print */
+    private void renderColorCodes() {
+        ColoredPrinter[] current = this.printers;
+        byte[][] codes = new byte[current.length][];
+        codes[0] = NONE;
+        for (int i = 1; i < current.length; i++) {
+            codes[i] = colorEnabled ? current[i].generateCode().getBytes(Charset.defaultCharset()) : NONE;
+        }
+        this.colorCodes = codes;
+        this.resetCode = colorEnabled ? RESET : NONE;
+    }
+
+    /** pre-encoded color code for a given level
+     *
+     * @param level {@link JcdpLogLevel}
+     * @return ANSI code bytes, empty if colors are off
+     */
+    // kept only pkg-private so it can be tested
+    byte[] getColorCode(JcdpLogLevel level) {
+        return this.colorCodes[level.getLevel()];
+    }
+
+    /** format messages into per-thread buffers and encode them without intermediate Strings.
+     * Only applies when not logging asynchronously, since queued events need their own String.
+     *
+     * @param gcFree boolean
+     */
+    void setGcFree(boolean gcFree) {
+        this.gcFree = gcFree;
+    }
+
+    /** drop repeats of the same event, see {@link Suppressor}
+     *
+     * @param suppressor {@link Suppressor} instance, or null to log every event
+     */
+    void setSuppressor(Suppressor suppressor) {
+        this.suppressor = suppressor;
+    }
+
+    /** limit how many events this logger prints, see {@link RateLimiter}
+     *
+     * @param limiter {@link RateLimiter} instance, or null for no limit
+     */
+    void setRateLimiter(RateLimiter limiter) {
+        this.rateLimiter = limiter;
+    }
+
+    /** count events and time writes, see {@link JcdpMetrics}
+     *
+     * @param metrics {@link JcdpMetrics} instance, or null to stop counting
+     */
+    synchronized void setMetrics(JcdpMetrics metrics) {
+        if (metrics != null && (metricsCounters == null || metricsCounters.metrics != metrics)) {
+            metricsCounters = new JcdpMetrics.Counters(metrics);
+        }
+        this.metrics = metrics == null ? null : metricsCounters;
+    }
+
+    synchronized JcdpMetrics.Counters getMetricsCounters() {
+        return metricsCounters;
+    }
+
+    /** render exceptions with these trimming settings, see {@link TracebackRenderer}
+     *
+     * @param renderer {@link TracebackRenderer} instance, usually shared by all loggers
+     */
+    void setTracebackRenderer(TracebackRenderer renderer) {
+        this.traceback = renderer == null ? TracebackRenderer.DEFAULT : renderer;
     }
 
     /** support for File Printer is currently not in JCDP but it's planned...
@@ -75,11 +308,35 @@ public class JcdpAdapter extends MarkerIgnoringBase {
      */
     public void setFilePrinter(Printer printer) {
         this.filePrinter = printer;
-        fileEnabled = true;
+        updateThreshold();
+    }
+
+    /** write to a shared log file. The caller stays responsible for releasing the sink.
+     *
+     * @param sink {@link LogSink} instance, or null to disable file output
+     * @param level {@link JcdpLogLevel} the file will be set to
+     */
+    void setFileSink(LogSink sink, JcdpLogLevel level) {
+        this.fileLevel = level.getLevel();
+        this.fileSink = sink;
+        updateThreshold();
+    }
+
+    LogSink getFileSink() {
+        return fileSink;
     }
 
     public boolean isFileEnabled() {
-        return fileEnabled;
+        return fileSink != null || filePrinter != null;
+    }
+
+    private void updateThreshold() {
+        int level = consoleLevel;
+        if (fileSink != null) level = Math.max(level, fileLevel);
+        level = Math.max(level, routeLevel);
+        Printer file = this.filePrinter;
+        if (file != null) level = Math.max(level, file.getLevel());
+        this.threshold = level;
     }
 
     /** pick the printer for a given level
@@ -92,14 +349,102 @@ public class JcdpAdapter extends MarkerIgnoringBase {
         return this.printers[level.getLevel()];
     }
 
+    /** whether a message at the given level would be printed anywhere.
+     * Files and named sinks can be set to a more verbose level than the console.
+     *
+     * @param level {@link JcdpLogLevel}
+     * @return true if the message should be formatted and logged
+     */
+    private boolean isLoggable(JcdpLogLevel level) {
+        return threshold >= level.getLevel();
+    }
+
+    /** hand events to a background writer instead of printing on the caller's thread.
+     *
+     * @param writer {@link AsyncWriter} instance, or null to print synchronously
+     */
+    void setAsyncWriter(AsyncWriter writer) {
+        this.asyncWriter = writer;
+    }
+
     /** log an actual message at the specified level
      *
      * @param msg {@link String}
      * @param level {@link JcdpLogLevel}
      */
     private void log(String msg, JcdpLogLevel level) {
-        getPrinter(level).debugPrintln(msg, level.getLevel());
-        if (fileEnabled) this.filePrinter.debugPrintln(msg, level.getLevel());
+        if (admit(level, msg, null)) dispatch(level, msg, null);
+    }
+
+    /** format and log a message with one argument.
+     * In garbage-free mode the message is formatted into a per-thread buffer instead of a new String.
+     *
+     * @param level {@link JcdpLogLevel}
+     * @param format {@link String} message pattern
+     * @param arg argument
+     */
+    private void logFormatted(JcdpLogLevel level, String format, Object arg) {
+        if (!admit(level, format, null)) return;
+        if (gcFree && asyncWriter == null) {
+            EventBuffer buffer = EventBuffer.get();
+            StringBuilder sb = buffer.text();
+            try {
+                Throwable t = ParameterFormatter.format(sb, format, arg);
+                dispatch(level, sb, t);
+            } finally {
+                buffer.release(sb);
+            }
+        } else {
+            FormattingTuple ft = MessageFormatter.format(format, arg);
+            dispatch(level, ft.getMessage(), ft.getThrowable());
+        }
+    }
+
+    private void logFormatted(JcdpLogLevel level, String format, Object arg1, Object arg2) {
+        if (!admit(level, format, null)) return;
+        if (gcFree && asyncWriter == null) {
+            EventBuffer buffer = EventBuffer.get();
+            StringBuilder sb = buffer.text();
+            try {
+                Throwable t = ParameterFormatter.format(sb, format, arg1, arg2);
+                dispatch(level, sb, t);
+            } finally {
+                buffer.release(sb);
+            }
+        } else {
+            FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
+            dispatch(level, ft.getMessage(), ft.getThrowable());
+        }
+    }
+
+    private void logFormatted(JcdpLogLevel level, String format, Object[] arguments) {
+        if (admit(level, format, null)) format(level, format, arguments);
+    }
+
+    /** format and log a message whose arguments are only computed if it gets through {@link #admit}
+     *
+     * @param level {@link JcdpLogLevel}
+     * @param format {@link String} message pattern
+     * @param suppliers argument suppliers
+     */
+    private void logSupplied(JcdpLogLevel level, String format, Supplier<?>[] suppliers) {
+        if (admit(level, format, null)) format(level, format, evaluate(suppliers));
+    }
+
+    private void format(JcdpLogLevel level, String format, Object[] arguments) {
+        if (gcFree && asyncWriter == null) {
+            EventBuffer buffer = EventBuffer.get();
+            StringBuilder sb = buffer.text();
+            try {
+                Throwable t = ParameterFormatter.format(sb, format, arguments);
+                dispatch(level, sb, t);
+            } finally {
+                buffer.release(sb);
+            }
+        } else {
+            FormattingTuple ft = MessageFormatter.arrayFormat(format, arguments);
+            dispatch(level, ft.getMessage(), ft.getThrowable());
+        }
     }
 
     /** log a full traceback of provided exception.
@@ -109,184 +454,787 @@ public class JcdpAdapter extends MarkerIgnoringBase {
      * @param level {@link JcdpLogLevel}
      */
     private void logTraceback(String msg, Throwable t, JcdpLogLevel level) {
-        getPrinter(level).debugPrintln(msg, level.getLevel());
-        getPrinter(level).debugPrintln("\t\t" + t.toString(), level.getLevel());
-        for (StackTraceElement line : t.getStackTrace()) {
-            getPrinter(level).debugPrintln("\t\t" + line.toString(), level.getLevel());
-        }
-        if (fileEnabled) {
-            this.filePrinter.debugPrintln(msg, level.getLevel());
-            this.filePrinter.debugPrintln("\t\t" + t.toString(), level.getLevel());
-            for (StackTraceElement line : t.getStackTrace()) {
-                this.filePrinter.debugPrintln("\t\t" + line.toString(), level.getLevel());
+        if (admit(level, msg, t)) dispatch(level, msg, t);
+    }
+
+    /** apply duplicate suppression and rate limiting, before anything is formatted.
+     * When an event gets through after others were dropped, a summary line is logged first.
+     *
+     * @param level {@link JcdpLogLevel}
+     * @param format {@link String} message pattern
+     * @param t {@link Throwable} exception, can be null
+     * @return false if the event should be dropped
+     */
+    private boolean admit(JcdpLogLevel level, String format, Throwable t) {
+        Suppressor suppressor = this.suppressor;
+        RateLimiter limiter = this.rateLimiter;
+        if (suppressor == null && limiter == null) return true;
+        long now = System.nanoTime();
+        if (suppressor != null && suppressor.hasExpired(now)) suppressor.reportExpired(now, this::reportSuppressed);
+        int suppressed = suppressor == null || format == null ? 0 : suppressor.admit(level, format, t, now);
+        int dropped = suppressed < 0 || limiter == null ? 0 : limiter.tryAcquire(now);
+        if (suppressed < 0 || dropped < 0) {
+            // rate limited: the count goes back, to be reported with a later event
+            if (suppressed > 0) suppressor.restore(level, format, t, suppressed);
+            JcdpMetrics.Counters counters = this.metrics;
+            if (counters != null) counters.metrics.throttled.increment();
+            return false;
+        }
+        if (suppressed > 0) reportSuppressed(level, format, suppressed);
+        if (dropped > 0) reportRateLimited(level, dropped);
+        return true;
+    }
+
+    /** log what suppression and rate limiting dropped and has not been reported yet,
+     * before they are replaced or nothing more gets logged
+     */
+    void reportThrottled() {
+        Suppressor suppressor = this.suppressor;
+        if (suppressor != null) suppressor.reportExpired(Long.MAX_VALUE, this::reportSuppressed);
+        RateLimiter limiter = this.rateLimiter;
+        int dropped = limiter == null ? 0 : limiter.takeDropped();
+        if (dropped > 0) reportRateLimited(JcdpLogLevel.WARN, dropped);
+    }
+
+    private void reportSuppressed(JcdpLogLevel level, String format, int count) {
+        dispatch(level, "Suppressed " + count + " similar messages: " + format, null);
+    }
+
+    private void reportRateLimited(JcdpLogLevel level, int count) {
+        dispatch(level, "Rate limit exceeded, dropped " + count + " messages", null);
+    }
+
+    /** capture what belongs to the calling thread (time, thread name, MDC),
+     * then print the event or hand it to the asynchronous writer.
+     *
+     * @param level {@link JcdpLogLevel}
+     * @param msg message, already formatted
+     * @param t {@link Throwable} exception, can be null
+     */
+    private void dispatch(JcdpLogLevel level, CharSequence msg, Throwable t) {
+        JcdpMetrics.Counters counters = this.metrics;
+        if (counters != null) counters.event(level);
+        long millis = System.currentTimeMillis();
+        String thread = Thread.currentThread().getName();
+        Map<String, String> mdc = JcdpMDCAdapter.context();
+        AsyncWriter async = this.asyncWriter;
+        if (async != null) {
+            async.submit(this, level, msg.toString(), t, millis, thread, mdc);
+        } else {
+            print(level, msg, t, millis, thread, mdc);
+        }
+    }
+
+    /** log an event whose marker has a rule: dropped if disabled, otherwise written to the marker's
+     * own file, if any, and to the usual destinations if the rule is additive.
+     * The marker's file is written on the calling thread, even in async mode.
+     *
+     * @param rule {@link MarkerRules.Rule} for the event's marker
+     * @param level {@link JcdpLogLevel}
+     * @param msg {@link String} message, already formatted
+     * @param t {@link Throwable} exception, can be null
+     */
+    private void logMarked(MarkerRules.Rule rule, JcdpLogLevel level, String msg, Throwable t) {
+        if (!rule.enabled) return;
+        if (rule.sink != null) {
+            JcdpMetrics.Counters counters = this.metrics;
+            long start = counters == null ? 0 : System.nanoTime();
+            Map<String, String> mdc = JcdpMDCAdapter.context();
+            writeTo(rule.sink, fileJson, level, render(msg, t, mdc), msg, t,
+                    System.currentTimeMillis(), Thread.currentThread().getName(), mdc);
+            if (counters != null) {
+                counters.metrics.writeLatency.record(System.nanoTime() - start);
+                // an additive event is counted once, by dispatch
+                if (!rule.additive) counters.event(level);
             }
+            if (!rule.additive) return;
+        }
+        dispatch(level, msg, t);
+    }
+
+    /** log a formatted event whose marker has a rule, keeping any trailing exception
+     *
+     * @param rule {@link MarkerRules.Rule} for the event's marker
+     * @param level {@link JcdpLogLevel}
+     * @param ft {@link FormattingTuple} of message and exception
+     */
+    private void logMarked(MarkerRules.Rule rule, JcdpLogLevel level, FormattingTuple ft) {
+        logMarked(rule, level, ft.getMessage(), ft.getThrowable());
+    }
+
+    /** log an event from a {@link JcdpEventBuilder}. The level has already been checked,
+     * suppliers are only called once the event gets through {@link #admit}.
+     * A supplied message is not known beforehand, so it is rate limited but never suppressed as a repeat.
+     *
+     * @param level {@link JcdpLogLevel}
+     * @param marker {@link Marker}, can be null
+     * @param format {@link String} message pattern, or null if supplied
+     * @param formatSupplier message pattern supplier, can be null
+     * @param arguments arguments, possibly still to be evaluated, can be null
+     * @param t {@link Throwable} exception, can be null
+     */
+    void logEvent(JcdpLogLevel level, Marker marker, String format, Supplier<String> formatSupplier,
+                  Object[] arguments, Throwable t) {
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (!rule.enabled || rule == MarkerRules.DEFAULT && !admit(level, format, t)) return;
+        if (formatSupplier != null) format = formatSupplier.get();
+        DefaultEventBuilder.evaluate(arguments);
+        if (arguments == null) {
+            logMarked(rule, level, format, t);
+            return;
+        }
+        FormattingTuple ft = MessageFormatter.arrayFormat(format, arguments);
+        logMarked(rule, level, ft.getMessage(), t != null ? t : ft.getThrowable());
+    }
+
+    private JcdpEventBuilder eventBuilder(JcdpLogLevel level) {
+        return isLoggable(level) ? new DefaultEventBuilder(this, level) : DefaultEventBuilder.DISABLED;
+    }
+
+    /** call suppliers, once the level check has passed
+     *
+     * @param suppliers argument suppliers
+     * @return their values
+     */
+    private static Object[] evaluate(Supplier<?>[] suppliers) {
+        if (suppliers == null) return null;
+        Object[] values = new Object[suppliers.length];
+        for (int i = 0; i < suppliers.length; i++) {
+            values[i] = suppliers[i] == null ? null : suppliers[i].get();
+        }
+        return values;
+    }
+
+    /** write an event to console, file and named sinks. Called directly or from the {@link AsyncWriter} thread.
+     *
+     * @param level {@link JcdpLogLevel}
+     * @param msg message
+     * @param t {@link Throwable} exception, can be null
+     * @param millis time of the event
+     * @param thread name of the thread that logged the event
+     * @param mdc MDC of that thread, can be null
+     */
+    void print(JcdpLogLevel level, CharSequence msg, Throwable t, long millis, String thread,
+               Map<String, String> mdc) {
+        JcdpMetrics.Counters counters = this.metrics;
+        long start = counters == null ? 0 : System.nanoTime();
+        // render once, then write the whole event in one call per destination
+        CharSequence text = render(msg, t, mdc);
+        printToConsole(text, level, millis, counters);
+        LogSink sink = this.fileSink;
+        if (sink != null && fileLevel >= level.getLevel()) {
+            writeTo(sink, fileJson, level, text, msg, t, millis, thread, mdc);
         }
+        for (SinkRoutes.Route route : routes[level.getLevel()]) {
+            writeTo(route.sink, route.json, level, text, msg, t, millis, thread, mdc);
+        }
+        Printer file = this.filePrinter;
+        if (file != null) file.debugPrintln(text, level.getLevel());
+        if (counters != null) counters.metrics.writeLatency.record(System.nanoTime() - start);
+    }
+
+    /** plain text of an event: selected MDC values, message and traceback
+     *
+     * @param msg message
+     * @param t {@link Throwable} exception, can be null
+     * @param mdc MDC of the thread that logged the event, can be null
+     * @return text to print
+     */
+    private CharSequence render(CharSequence msg, Throwable t, Map<String, String> mdc) {
+        CharSequence text = msg;
+        if (mdcKeys.length > 0 && mdc != null) {
+            StringBuilder sb = EventBuffer.get().prefix();
+            appendContext(sb, mdc);
+            if (sb.length() > 0) text = sb.append(msg);
+        }
+        return t == null ? text : traceback.render(text, t);
+    }
+
+    /** append the selected MDC values, if any, without allocating
+     *
+     * @param sb {@link StringBuilder} to append to
+     * @param mdc MDC of the thread that logged the event
+     */
+    private void appendContext(StringBuilder sb, Map<String, String> mdc) {
+        int start = sb.length();
+        for (String key : this.mdcKeys) {
+            String value = mdc.get(key);
+            if (value == null) continue;
+            sb.append(sb.length() == start ? '[' : ' ').append(key).append('=').append(value);
+        }
+        if (sb.length() > start) sb.append("] ");
+    }
+
+    /** write an event to a file, as plain text or as JSON
+     *
+     * @param sink {@link LogSink} to write to
+     * @param json whether to write a JSON record rather than the plain text
+     * @param level {@link JcdpLogLevel}
+     * @param text plain text, from {@link #render(CharSequence, Throwable, Map)}
+     * @param msg message
+     * @param t {@link Throwable} exception, can be null
+     * @param millis time of the event
+     * @param thread name of the thread that logged the event
+     * @param mdc MDC of that thread, can be null
+     */
+    private void writeTo(LogSink sink, boolean json, JcdpLogLevel level, CharSequence text, CharSequence msg,
+                         Throwable t, long millis, String thread, Map<String, String> mdc) {
+        if (json) {
+            StringBuilder sb = EventBuffer.get().record();
+            JsonEncoder.encode(sb, timestampFormat, millis, level, name, thread, msg, mdc, t);
+            sink.write(sb, level, millis);
+        } else {
+            sink.write(text, level, millis);
+        }
+    }
+
+    private void printToConsole(CharSequence text, JcdpLogLevel level, long millis, JcdpMetrics.Counters counters) {
+        if (consoleLevel < level.getLevel()) return;
+        // what ColoredPrinter.println prints plus a reset, assembled into one write
+        EventBuffer buffer = EventBuffer.get();
+        buffer.beginLine(colorCodes[level.getLevel()]);
+        TimestampFormatter timestamps = this.timestamps;
+        if (timestamps != null) {
+            buffer.appendTimestamp(timestamps, millis);
+            buffer.append(SPACE);
+        }
+        buffer.append(text);
+        buffer.append(resetCode);
+        buffer.append(NEWLINE);
+        int length = buffer.lineLength();
+        console.write(buffer, level.getLevel() <= stderrLevel);
+        if (counters != null) counters.metrics.consoleBytes.add(length);
     }
 
     /* --- begin boring SLF4J wrappers --- */
 
     @Override
     public boolean isTraceEnabled() {
-        return this.logLevel.getLevel() >= JcdpLogLevel.TRACE.getLevel();
+        return this.threshold >= JcdpLogLevel.TRACE.getLevel();
     }
 
     @Override
     public void trace(String msg) {
+        if (!isLoggable(JcdpLogLevel.TRACE)) return;
         log(msg, JcdpLogLevel.TRACE);
     }
 
     @Override
     public void trace(String format, Object arg) {
-        FormattingTuple ft = MessageFormatter.format(format, arg);
-        log(ft.getMessage(), JcdpLogLevel.TRACE);
+        if (!isLoggable(JcdpLogLevel.TRACE)) return;
+        logFormatted(JcdpLogLevel.TRACE, format, arg);
     }
 
     @Override
     public void trace(String format, Object arg1, Object arg2) {
-        FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-        log(ft.getMessage(), JcdpLogLevel.TRACE);
+        if (!isLoggable(JcdpLogLevel.TRACE)) return;
+        logFormatted(JcdpLogLevel.TRACE, format, arg1, arg2);
     }
 
     @Override
     public void trace(String format, Object... arguments) {
-        FormattingTuple ft = MessageFormatter.arrayFormat(format, arguments);
-        log(ft.getMessage(), JcdpLogLevel.TRACE);
+        if (!isLoggable(JcdpLogLevel.TRACE)) return;
+        logFormatted(JcdpLogLevel.TRACE, format, arguments);
     }
 
     @Override
     public void trace(String msg, Throwable t) {
+        if (!isLoggable(JcdpLogLevel.TRACE)) return;
         logTraceback(msg, t, JcdpLogLevel.TRACE);
     }
 
+    @Override
+    public void trace(String format, Supplier<?>... arguments) {
+        if (!isLoggable(JcdpLogLevel.TRACE)) return;
+        logSupplied(JcdpLogLevel.TRACE, format, arguments);
+    }
+
+    @Override
+    public JcdpEventBuilder atTrace() {
+        return eventBuilder(JcdpLogLevel.TRACE);
+    }
+
+    @Override
+    public boolean isTraceEnabled(Marker marker) {
+        return isTraceEnabled() && markerRules.get(marker).enabled;
+    }
+
+    @Override
+    public void trace(Marker marker, String msg) {
+        if (!isLoggable(JcdpLogLevel.TRACE)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            log(msg, JcdpLogLevel.TRACE);
+        } else {
+            logMarked(rule, JcdpLogLevel.TRACE, msg, null);
+        }
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object arg) {
+        if (!isLoggable(JcdpLogLevel.TRACE)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.TRACE, format, arg);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.TRACE, MessageFormatter.format(format, arg));
+        }
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object arg1, Object arg2) {
+        if (!isLoggable(JcdpLogLevel.TRACE)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.TRACE, format, arg1, arg2);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.TRACE, MessageFormatter.format(format, arg1, arg2));
+        }
+    }
+
+    @Override
+    public void trace(Marker marker, String format, Object... arguments) {
+        if (!isLoggable(JcdpLogLevel.TRACE)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.TRACE, format, arguments);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.TRACE, MessageFormatter.arrayFormat(format, arguments));
+        }
+    }
+
+    @Override
+    public void trace(Marker marker, String msg, Throwable t) {
+        if (!isLoggable(JcdpLogLevel.TRACE)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logTraceback(msg, t, JcdpLogLevel.TRACE);
+        } else {
+            logMarked(rule, JcdpLogLevel.TRACE, msg, t);
+        }
+    }
+
     @Override
     public boolean isDebugEnabled() {
-        return this.logLevel.getLevel() >= JcdpLogLevel.DEBUG.getLevel();
+        return this.threshold >= JcdpLogLevel.DEBUG.getLevel();
     }
 
     @Override
     public void debug(String msg) {
+        if (!isLoggable(JcdpLogLevel.DEBUG)) return;
         log(msg, JcdpLogLevel.DEBUG);
     }
 
     @Override
     public void debug(String format, Object arg) {
-        FormattingTuple ft = MessageFormatter.format(format, arg);
-        log(ft.getMessage(), JcdpLogLevel.DEBUG);
+        if (!isLoggable(JcdpLogLevel.DEBUG)) return;
+        logFormatted(JcdpLogLevel.DEBUG, format, arg);
     }
 
     @Override
     public void debug(String format, Object arg1, Object arg2) {
-        FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-        log(ft.getMessage(), JcdpLogLevel.DEBUG);
+        if (!isLoggable(JcdpLogLevel.DEBUG)) return;
+        logFormatted(JcdpLogLevel.DEBUG, format, arg1, arg2);
     }
 
     @Override
     public void debug(String format, Object... arguments) {
-        FormattingTuple ft = MessageFormatter.arrayFormat(format, arguments);
-        log(ft.getMessage(), JcdpLogLevel.DEBUG);
+        if (!isLoggable(JcdpLogLevel.DEBUG)) return;
+        logFormatted(JcdpLogLevel.DEBUG, format, arguments);
     }
 
     @Override
     public void debug(String msg, Throwable t) {
+        if (!isLoggable(JcdpLogLevel.DEBUG)) return;
         logTraceback(msg, t, JcdpLogLevel.DEBUG);
     }
 
+    @Override
+    public void debug(String format, Supplier<?>... arguments) {
+        if (!isLoggable(JcdpLogLevel.DEBUG)) return;
+        logSupplied(JcdpLogLevel.DEBUG, format, arguments);
+    }
+
+    @Override
+    public JcdpEventBuilder atDebug() {
+        return eventBuilder(JcdpLogLevel.DEBUG);
+    }
+
+    @Override
+    public boolean isDebugEnabled(Marker marker) {
+        return isDebugEnabled() && markerRules.get(marker).enabled;
+    }
+
+    @Override
+    public void debug(Marker marker, String msg) {
+        if (!isLoggable(JcdpLogLevel.DEBUG)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            log(msg, JcdpLogLevel.DEBUG);
+        } else {
+            logMarked(rule, JcdpLogLevel.DEBUG, msg, null);
+        }
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object arg) {
+        if (!isLoggable(JcdpLogLevel.DEBUG)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.DEBUG, format, arg);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.DEBUG, MessageFormatter.format(format, arg));
+        }
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object arg1, Object arg2) {
+        if (!isLoggable(JcdpLogLevel.DEBUG)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.DEBUG, format, arg1, arg2);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.DEBUG, MessageFormatter.format(format, arg1, arg2));
+        }
+    }
+
+    @Override
+    public void debug(Marker marker, String format, Object... arguments) {
+        if (!isLoggable(JcdpLogLevel.DEBUG)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.DEBUG, format, arguments);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.DEBUG, MessageFormatter.arrayFormat(format, arguments));
+        }
+    }
+
+    @Override
+    public void debug(Marker marker, String msg, Throwable t) {
+        if (!isLoggable(JcdpLogLevel.DEBUG)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logTraceback(msg, t, JcdpLogLevel.DEBUG);
+        } else {
+            logMarked(rule, JcdpLogLevel.DEBUG, msg, t);
+        }
+    }
+
     @Override
     public boolean isInfoEnabled() {
-        return this.logLevel.getLevel() >= JcdpLogLevel.INFO.getLevel();
+        return this.threshold >= JcdpLogLevel.INFO.getLevel();
     }
 
     @Override
     public void info(String msg) {
+        if (!isLoggable(JcdpLogLevel.INFO)) return;
         log(msg, JcdpLogLevel.INFO);
     }
 
     @Override
     public void info(String format, Object arg) {
-        FormattingTuple ft = MessageFormatter.format(format, arg);
-        log(ft.getMessage(), JcdpLogLevel.INFO);
+        if (!isLoggable(JcdpLogLevel.INFO)) return;
+        logFormatted(JcdpLogLevel.INFO, format, arg);
     }
 
     @Override
     public void info(String format, Object arg1, Object arg2) {
-        FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-        log(ft.getMessage(), JcdpLogLevel.INFO);
+        if (!isLoggable(JcdpLogLevel.INFO)) return;
+        logFormatted(JcdpLogLevel.INFO, format, arg1, arg2);
     }
 
     @Override
     public void info(String format, Object... arguments) {
-        FormattingTuple ft = MessageFormatter.arrayFormat(format, arguments);
-        log(ft.getMessage(), JcdpLogLevel.INFO);
+        if (!isLoggable(JcdpLogLevel.INFO)) return;
+        logFormatted(JcdpLogLevel.INFO, format, arguments);
     }
 
     @Override
     public void info(String msg, Throwable t) {
+        if (!isLoggable(JcdpLogLevel.INFO)) return;
         logTraceback(msg, t, JcdpLogLevel.INFO);
     }
 
+    @Override
+    public void info(String format, Supplier<?>... arguments) {
+        if (!isLoggable(JcdpLogLevel.INFO)) return;
+        logSupplied(JcdpLogLevel.INFO, format, arguments);
+    }
+
+    @Override
+    public JcdpEventBuilder atInfo() {
+        return eventBuilder(JcdpLogLevel.INFO);
+    }
+
+    @Override
+    public boolean isInfoEnabled(Marker marker) {
+        return isInfoEnabled() && markerRules.get(marker).enabled;
+    }
+
+    @Override
+    public void info(Marker marker, String msg) {
+        if (!isLoggable(JcdpLogLevel.INFO)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            log(msg, JcdpLogLevel.INFO);
+        } else {
+            logMarked(rule, JcdpLogLevel.INFO, msg, null);
+        }
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object arg) {
+        if (!isLoggable(JcdpLogLevel.INFO)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.INFO, format, arg);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.INFO, MessageFormatter.format(format, arg));
+        }
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object arg1, Object arg2) {
+        if (!isLoggable(JcdpLogLevel.INFO)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.INFO, format, arg1, arg2);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.INFO, MessageFormatter.format(format, arg1, arg2));
+        }
+    }
+
+    @Override
+    public void info(Marker marker, String format, Object... arguments) {
+        if (!isLoggable(JcdpLogLevel.INFO)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.INFO, format, arguments);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.INFO, MessageFormatter.arrayFormat(format, arguments));
+        }
+    }
+
+    @Override
+    public void info(Marker marker, String msg, Throwable t) {
+        if (!isLoggable(JcdpLogLevel.INFO)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logTraceback(msg, t, JcdpLogLevel.INFO);
+        } else {
+            logMarked(rule, JcdpLogLevel.INFO, msg, t);
+        }
+    }
+
     @Override
     public boolean isWarnEnabled() {
-        return this.logLevel.getLevel() >= JcdpLogLevel.WARN.getLevel();
+        return this.threshold >= JcdpLogLevel.WARN.getLevel();
     }
 
     @Override
     public void warn(String msg) {
+        if (!isLoggable(JcdpLogLevel.WARN)) return;
         log(msg, JcdpLogLevel.WARN);
     }
 
     @Override
     public void warn(String format, Object arg) {
-        FormattingTuple ft = MessageFormatter.format(format, arg);
-        log(ft.getMessage(), JcdpLogLevel.WARN);
+        if (!isLoggable(JcdpLogLevel.WARN)) return;
+        logFormatted(JcdpLogLevel.WARN, format, arg);
     }
 
     @Override
     public void warn(String format, Object arg1, Object arg2) {
-        FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-        log(ft.getMessage(), JcdpLogLevel.WARN);
+        if (!isLoggable(JcdpLogLevel.WARN)) return;
+        logFormatted(JcdpLogLevel.WARN, format, arg1, arg2);
     }
 
     @Override
     public void warn(String format, Object... arguments) {
-        FormattingTuple ft = MessageFormatter.arrayFormat(format, arguments);
-        log(ft.getMessage(), JcdpLogLevel.WARN);
+        if (!isLoggable(JcdpLogLevel.WARN)) return;
+        logFormatted(JcdpLogLevel.WARN, format, arguments);
     }
 
     @Override
     public void warn(String msg, Throwable t) {
+        if (!isLoggable(JcdpLogLevel.WARN)) return;
         logTraceback(msg, t, JcdpLogLevel.WARN);
     }
 
+    @Override
+    public void warn(String format, Supplier<?>... arguments) {
+        if (!isLoggable(JcdpLogLevel.WARN)) return;
+        logSupplied(JcdpLogLevel.WARN, format, arguments);
+    }
+
+    @Override
+    public JcdpEventBuilder atWarn() {
+        return eventBuilder(JcdpLogLevel.WARN);
+    }
+
+    @Override
+    public boolean isWarnEnabled(Marker marker) {
+        return isWarnEnabled() && markerRules.get(marker).enabled;
+    }
+
+    @Override
+    public void warn(Marker marker, String msg) {
+        if (!isLoggable(JcdpLogLevel.WARN)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            log(msg, JcdpLogLevel.WARN);
+        } else {
+            logMarked(rule, JcdpLogLevel.WARN, msg, null);
+        }
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object arg) {
+        if (!isLoggable(JcdpLogLevel.WARN)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.WARN, format, arg);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.WARN, MessageFormatter.format(format, arg));
+        }
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object arg1, Object arg2) {
+        if (!isLoggable(JcdpLogLevel.WARN)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.WARN, format, arg1, arg2);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.WARN, MessageFormatter.format(format, arg1, arg2));
+        }
+    }
+
+    @Override
+    public void warn(Marker marker, String format, Object... arguments) {
+        if (!isLoggable(JcdpLogLevel.WARN)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.WARN, format, arguments);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.WARN, MessageFormatter.arrayFormat(format, arguments));
+        }
+    }
+
+    @Override
+    public void warn(Marker marker, String msg, Throwable t) {
+        if (!isLoggable(JcdpLogLevel.WARN)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logTraceback(msg, t, JcdpLogLevel.WARN);
+        } else {
+            logMarked(rule, JcdpLogLevel.WARN, msg, t);
+        }
+    }
+
     @Override
     public boolean isErrorEnabled() {
-        return this.logLevel.getLevel() >= JcdpLogLevel.ERROR.getLevel();
+        return this.threshold >= JcdpLogLevel.ERROR.getLevel();
     }
 
     @Override
     public void error(String msg) {
+        if (!isLoggable(JcdpLogLevel.ERROR)) return;
         log(msg, JcdpLogLevel.ERROR);
     }
 
     @Override
     public void error(String format, Object arg) {
-        FormattingTuple ft = MessageFormatter.format(format, arg);
-        log(ft.getMessage(), JcdpLogLevel.ERROR);
+        if (!isLoggable(JcdpLogLevel.ERROR)) return;
+        logFormatted(JcdpLogLevel.ERROR, format, arg);
     }
 
     @Override
     public void error(String format, Object arg1, Object arg2) {
-        FormattingTuple ft = MessageFormatter.format(format, arg1, arg2);
-        log(ft.getMessage(), JcdpLogLevel.ERROR);
+        if (!isLoggable(JcdpLogLevel.ERROR)) return;
+        logFormatted(JcdpLogLevel.ERROR, format, arg1, arg2);
     }
 
     @Override
     public void error(String format, Object... arguments) {
-        FormattingTuple ft = MessageFormatter.arrayFormat(format, arguments);
-        log(ft.getMessage(), JcdpLogLevel.ERROR);
+        if (!isLoggable(JcdpLogLevel.ERROR)) return;
+        logFormatted(JcdpLogLevel.ERROR, format, arguments);
     }
 
     @Override
     public void error(String msg, Throwable t) {
+        if (!isLoggable(JcdpLogLevel.ERROR)) return;
         logTraceback(msg, t, JcdpLogLevel.ERROR);
     }
+
+    @Override
+    public void error(String format, Supplier<?>... arguments) {
+        if (!isLoggable(JcdpLogLevel.ERROR)) return;
+        logSupplied(JcdpLogLevel.ERROR, format, arguments);
+    }
+
+    @Override
+    public JcdpEventBuilder atError() {
+        return eventBuilder(JcdpLogLevel.ERROR);
+    }
+
+    @Override
+    public boolean isErrorEnabled(Marker marker) {
+        return isErrorEnabled() && markerRules.get(marker).enabled;
+    }
+
+    @Override
+    public void error(Marker marker, String msg) {
+        if (!isLoggable(JcdpLogLevel.ERROR)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            log(msg, JcdpLogLevel.ERROR);
+        } else {
+            logMarked(rule, JcdpLogLevel.ERROR, msg, null);
+        }
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object arg) {
+        if (!isLoggable(JcdpLogLevel.ERROR)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.ERROR, format, arg);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.ERROR, MessageFormatter.format(format, arg));
+        }
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object arg1, Object arg2) {
+        if (!isLoggable(JcdpLogLevel.ERROR)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.ERROR, format, arg1, arg2);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.ERROR, MessageFormatter.format(format, arg1, arg2));
+        }
+    }
+
+    @Override
+    public void error(Marker marker, String format, Object... arguments) {
+        if (!isLoggable(JcdpLogLevel.ERROR)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logFormatted(JcdpLogLevel.ERROR, format, arguments);
+        } else if (rule.enabled) {
+            logMarked(rule, JcdpLogLevel.ERROR, MessageFormatter.arrayFormat(format, arguments));
+        }
+    }
+
+    @Override
+    public void error(Marker marker, String msg, Throwable t) {
+        if (!isLoggable(JcdpLogLevel.ERROR)) return;
+        MarkerRules.Rule rule = markerRules.get(marker);
+        if (rule == MarkerRules.DEFAULT) {
+            logTraceback(msg, t, JcdpLogLevel.ERROR);
+        } else {
+            logMarked(rule, JcdpLogLevel.ERROR, msg, t);
+        }
+    }
 }
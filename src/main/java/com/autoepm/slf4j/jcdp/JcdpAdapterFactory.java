@@ -24,62 +24,693 @@
 
 package com.autoepm.slf4j.jcdp;
 
-import com.diogonunes.jcdp.bw.Printer;
 import com.diogonunes.jcdp.color.ColoredPrinter;
 import com.diogonunes.jcdp.color.api.Ansi;
 import org.slf4j.ILoggerFactory;
 import org.slf4j.Logger;
+import org.slf4j.helpers.Util;
 
+import java.io.Console;
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Factory that SLF4J will call to retrieve a logger.
+ * Loggers are cached by name, so the same instance is returned for the same name;
+ * call {@link #reconfigure()} to apply property changes to loggers already handed out.
  */
 public class JcdpAdapterFactory implements ILoggerFactory {
 
+    // Console.isTerminal(), JDK 22 and later; null before
+    private static final Method IS_TERMINAL = findIsTerminal();
+
+    private final ConcurrentMap<String, JcdpAdapter> loggerMap = new ConcurrentHashMap<>();
+    // levels set at runtime through setLevel(), taking precedence over properties
+    private final ConcurrentMap<String, JcdpLogLevel> levelOverrides = new ConcurrentHashMap<>();
+    private volatile Properties config = JcdpConfig.load();
+    // handed to loggers only while jcdp.metrics.enabled=true
+    private final JcdpMetrics metrics = new JcdpMetrics(this);
+    // a ReentrantLock rather than a monitor: creating loggers and reconfiguring open files,
+    // which must not pin virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by lock
+    private AsyncWriter asyncWriter;
+    // guarded by lock
+    private ConfigWatcher watcher;
+    // guarded by lock
+    private MarkerRules markerRules;
+    // guarded by lock
+    private SinkRoutes sinkRoutes;
+    // shared by all loggers, so that they share its cache; guarded by lock
+    private TracebackRenderer tracebackRenderer;
+
     /**
-     * whether each line should be prefixed by a timestamp
+     * whether each line should be prefixed by a timestamp, from jcdp.timestamp.enabled
+     * in the configuration file or system properties
      *
      * @return boolean
      */
     public static boolean isTsEnabled() {
-        return Boolean.valueOf(System.getProperty("jcdp.timestamp.enabled", "false"));
+        return Boolean.valueOf(JcdpConfig.load().getProperty("jcdp.timestamp.enabled", "false"));
     }
 
-    /** property initialization. Currently all properties are retrieved from System if they start with 'jcdp.'
+    /** current configuration snapshot, see {@link JcdpConfig}.
+     * Loaded once and replaced as a whole by {@link #reconfigure()}, never modified.
      *
      * @return {@link java.util.Properties} containing only JCDP-related properties.
      */
     private Properties loadProperties() {
-        // get basic config from somewhere -- for now I'll hack it into sysprops...
-        Set<String> sysprops = System.getProperties().stringPropertyNames();
-        Map<Object, Object> jcdpPropsMap = System.getProperties().entrySet().stream()
-                .filter(entry -> entry.getKey().toString().startsWith("jcdp."))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-        Properties jcdpProps = new Properties();
-        jcdpProps.putAll(jcdpPropsMap);
-        return jcdpProps;
+        return config;
+    }
+
+    /** whether to register the MBeans, from jcdp.jmx.enabled
+     *
+     * @return boolean
+     */
+    boolean isJmxEnabled() {
+        return Boolean.valueOf(loadProperties().getProperty("jcdp.jmx.enabled", "true"));
     }
 
+    /** reload configuration whenever the jcdp.properties file changes, until {@link #shutdown()}.
+     * Does nothing if there is no such file on disk or jcdp.config.watch is false.
+     */
+    void watchConfig() {
+        lock.lock();
+        try {
+            if (watcher != null || !Boolean.valueOf(config.getProperty("jcdp.config.watch", "true"))) return;
+            File file = JcdpConfig.locateFile();
+            if (file == null) return;
+            try {
+                watcher = new ConfigWatcher(file, this::reconfigure);
+            } catch (IOException e) {
+                Util.report("Cannot watch " + file + " for changes", e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
     /** main SLF4J factory method
      *
-     * @param name logger name (currently ignored)
+     * @param name logger name
      * @return {@link JcdpAdapter} instance that implements the {@link org.slf4j.Logger} interface
      */
     @Override
     public Logger getLogger(String name) {
-        Properties props = loadProperties(); // reloaded every time so we can change in-flight
+        JcdpAdapter adapter = loggerMap.get(name);
+        if (adapter != null) return adapter;
+        // created under the factory lock rather than in computeIfAbsent, which would open files
+        // while holding a map bin; this way reconfigure() cannot run halfway through, nor miss the new logger
+        lock.lock();
+        try {
+            adapter = loggerMap.get(name);
+            if (adapter == null) {
+                adapter = createLogger(name);
+                loggerMap.put(name, adapter);
+            }
+            return adapter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** reload configuration and apply it to every logger created so far.
+     * Loggers keep their identity, so references held in static fields see the change too.
+     * If the new properties are invalid, the exception is thrown before anything is changed
+     * and the previous configuration stays in place.
+     */
+    public void reconfigure() {
+        lock.lock();
+        try {
+            Properties props = JcdpConfig.load();
+            // parse everything first, so that a bad value cannot leave loggers half reconfigured
+            List<JcdpAdapter> adapters = new ArrayList<>(loggerMap.values());
+            JcdpLogLevel[] levels = new JcdpLogLevel[adapters.size()];
+            Suppressor[] suppressors = new Suppressor[adapters.size()];
+            RateLimiter[] rateLimiters = new RateLimiter[adapters.size()];
+            // colored printers hold no per-logger state, so they can be shared by loggers at the same level
+            Map<JcdpLogLevel, ColoredPrinter[]> printers = new EnumMap<>(JcdpLogLevel.class);
+            for (int i = 0; i < levels.length; i++) {
+                String name = adapters.get(i).getName();
+                levels[i] = getLevel(props, name);
+                printers.computeIfAbsent(levels[i], l -> buildPrinters(props, l));
+                suppressors[i] = buildSuppressor(props);
+                rateLimiters[i] = getRateLimiter(props, name);
+            }
+            TracebackRenderer renderer = buildTracebackRenderer(props);
+            boolean tsEnabled = Boolean.valueOf(props.getProperty("jcdp.timestamp.enabled", "false"));
+            TimestampFormatter timestampFormat = getTimestampFormat(props);
+            JcdpLogLevel fileLevel = getFileLevel(props);
+            FileSettings fileSettings = getFileSettings(props);
+            Class<? extends LogSink> sinkType = fileSettings == null ? null : fileSettings.type;
+            boolean gcFree = Boolean.valueOf(props.getProperty("jcdp.gcfree", "false"));
+            boolean colorEnabled = isColorEnabled(props);
+            ConsoleSink console = getConsole(props);
+            JcdpLogLevel stderrLevel = getStderrLevel(props);
+            String[] mdcKeys = getMdcKeys(props);
+            boolean fileJson = isFileJson(props);
+            JcdpMetrics enabledMetrics = getMetrics(props);
+
+            // then open what the new configuration needs, undoing it all if one step fails
+            AsyncWriter oldWriter = asyncWriter;
+            AsyncWriter newWriter = null;
+            MarkerRules newRules = null;
+            SinkRoutes newRoutes;
+            try {
+                newWriter = buildAsyncWriter(props, oldWriter);
+                newRules = buildMarkerRules(props);
+                newRoutes = buildSinkRoutes(props);
+            } catch (RuntimeException | Error e) {
+                if (newRules != null) releaseSinks(newRules.getSinks());
+                if (newWriter != null && newWriter != oldWriter) newWriter.close();
+                throw e;
+            }
+
+            // nothing can fail from here on
+            config = props;
+            asyncWriter = newWriter;
+            MarkerRules oldRules = markerRules;
+            markerRules = newRules;
+            SinkRoutes oldRoutes = sinkRoutes;
+            sinkRoutes = newRoutes;
+            tracebackRenderer = renderer;
+            for (int i = 0; i < levels.length; i++) {
+                JcdpAdapter adapter = adapters.get(i);
+                adapter.configure(levels[i], printers.get(levels[i]));
+                adapter.setTimestamps(tsEnabled, timestampFormat);
+                adapter.setColorEnabled(colorEnabled);
+                adapter.setConsole(console, stderrLevel);
+                adapter.setMdcKeys(mdcKeys);
+                adapter.setFileJson(fileJson);
+                adapter.setGcFree(gcFree);
+                adapter.reportThrottled();
+                adapter.setSuppressor(suppressors[i]);
+                adapter.setRateLimiter(rateLimiters[i]);
+                LogSink oldSink = adapter.getFileSink();
+                if (oldSink != null && sinkType != null && !sinkType.isInstance(oldSink)) {
+                    // file mode changed: the old sink must be closed before the file can be reopened
+                    adapter.setFileSink(null, fileLevel);
+                    SinkRegistry.release(oldSink);
+                    oldSink = null;
+                }
+                // otherwise acquire before releasing, so a file that stays configured is not reopened
+                adapter.setFileSink(acquireFileSink(fileSettings), fileLevel);
+                if (oldSink != null) SinkRegistry.release(oldSink);
+                adapter.setAsyncWriter(newWriter);
+                adapter.setMarkerRules(newRules);
+                adapter.setRoutes(newRoutes.compile(adapter.getName()));
+                adapter.setTracebackRenderer(renderer);
+                adapter.setMetrics(enabledMetrics);
+            }
+            if (oldRules != null) releaseSinks(oldRules.getSinks());
+            if (oldRoutes != null) releaseSinks(oldRoutes.getSinks());
+            // only close once nobody can submit to it anymore
+            if (oldWriter != null && oldWriter != newWriter) oldWriter.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** change the level of a logger and all loggers below it, at runtime.
+     * Existing loggers are updated in place; the setting survives {@link #reconfigure()}
+     * and takes precedence over jcdp.level properties for the same prefix.
+     *
+     * @param prefix logger name or package, or {@link Logger#ROOT_LOGGER_NAME} for every logger
+     * @param level {@link JcdpLogLevel} to set, or null to go back to the configured level
+     */
+    public void setLevel(String prefix, JcdpLogLevel level) {
+        String key = Logger.ROOT_LOGGER_NAME.equals(prefix) ? "" : prefix;
+        // under the same lock as reconfigure(), so its precomputed levels cannot undo this change
+        lock.lock();
+        try {
+            if (level == null) {
+                levelOverrides.remove(key);
+            } else {
+                levelOverrides.put(key, level);
+            }
+            Properties props = loadProperties();
+            for (JcdpAdapter adapter : loggerMap.values()) {
+                String name = adapter.getName();
+                if (key.isEmpty() || name.equals(key) || name.startsWith(key + ".")) {
+                    adapter.setLevel(getLevel(props, name));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** current level of a logger, as it would be used if it was created now
+     *
+     * @param name logger name
+     * @return {@link JcdpLogLevel}
+     */
+    public JcdpLogLevel getLevel(String name) {
+        JcdpAdapter adapter = loggerMap.get(name);
+        return adapter != null ? adapter.getLevel() : getLevel(loadProperties(), name);
+    }
+
+    /** names of all loggers created so far
+     *
+     * @return sorted list of names
+     */
+    public List<String> getLoggerNames() {
+        List<String> names = new ArrayList<>(loggerMap.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /** logging metrics of this factory; they only move while jcdp.metrics.enabled=true
+     *
+     * @return {@link JcdpMetrics} instance
+     */
+    public JcdpMetrics getMetrics() {
+        return metrics;
+    }
+
+    Collection<JcdpAdapter> getLoggers() {
+        return loggerMap.values();
+    }
+
+    AsyncWriter getCurrentAsyncWriter() {
+        lock.lock();
+        try {
+            return asyncWriter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** flush and stop the asynchronous writer, if any, then close log files.
+     * Loggers keep printing to console afterwards, on the caller's thread.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (IOException e) {
+                    // nothing left to do
+                }
+                watcher = null;
+            }
+            for (JcdpAdapter adapter : loggerMap.values()) {
+                adapter.reportThrottled();
+            }
+            if (asyncWriter != null) asyncWriter.close();
+            for (JcdpAdapter adapter : loggerMap.values()) {
+                adapter.setMarkerRules(null);
+                adapter.setRoutes(null);
+                LogSink sink = adapter.getFileSink();
+                if (sink != null) {
+                    adapter.setFileSink(null, JcdpLogLevel.ERROR);
+                    SinkRegistry.release(sink);
+                }
+            }
+            if (markerRules != null) {
+                releaseSinks(markerRules.getSinks());
+                markerRules = null;
+            }
+            if (sinkRoutes != null) {
+                releaseSinks(sinkRoutes.getSinks());
+                sinkRoutes = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** build a brand new logger from current properties, bypassing the cache.
+     *
+     * @param name logger name
+     * @return new {@link JcdpAdapter} instance
+     */
+    // kept only pkg-private so it can be benchmarked
+    JcdpAdapter createLogger(String name) {
+        lock.lock();
+        try {
+            return buildLogger(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private JcdpAdapter buildLogger(String name) {
+        Properties props = loadProperties();
+        JcdpLogLevel enabledLevel = getLevel(props, name);
+        // create the adapter
+        JcdpAdapter adapter = new JcdpAdapter(name, enabledLevel, buildPrinters(props, enabledLevel));
+        adapter.setTimestamps(Boolean.valueOf(props.getProperty("jcdp.timestamp.enabled", "false")),
+                getTimestampFormat(props));
+        adapter.setColorEnabled(isColorEnabled(props));
+        adapter.setConsole(getConsole(props), getStderrLevel(props));
+        adapter.setMdcKeys(getMdcKeys(props));
+        adapter.setFileJson(isFileJson(props));
+        adapter.setGcFree(Boolean.valueOf(props.getProperty("jcdp.gcfree", "false")));
+        adapter.setSuppressor(buildSuppressor(props));
+        adapter.setRateLimiter(getRateLimiter(props, name));
+        LogSink sink = acquireFileSink(getFileSettings(props));
+        if (sink != null) {
+            adapter.setFileSink(sink, getFileLevel(props));
+        }
+        if (Boolean.valueOf(props.getProperty("jcdp.async.enabled", "false"))) {
+            adapter.setAsyncWriter(getAsyncWriter(props));
+        }
+        adapter.setMarkerRules(getMarkerRules(props));
+        adapter.setRoutes(getSinkRoutes(props).compile(name));
+        adapter.setTracebackRenderer(getTracebackRenderer(props));
+        adapter.setMetrics(getMetrics(props));
+        return adapter;
+    }
+
+    /** retrieve the marker rules shared by all loggers, opening marker files if necessary
+     *
+     * @param props JCDP properties
+     * @return {@link MarkerRules} instance
+     */
+    // called with the lock held
+    private MarkerRules getMarkerRules(Properties props) {
+        if (markerRules == null) {
+            markerRules = buildMarkerRules(props);
+        }
+        return markerRules;
+    }
+
+    /** retrieve the named sinks shared by all loggers, opening their files if necessary
+     *
+     * @param props JCDP properties
+     * @return {@link SinkRoutes} instance
+     */
+    // called with the lock held
+    private SinkRoutes getSinkRoutes(Properties props) {
+        if (sinkRoutes == null) {
+            sinkRoutes = buildSinkRoutes(props);
+        }
+        return sinkRoutes;
+    }
+
+    /** retrieve the exception renderer shared by all loggers
+     *
+     * @param props JCDP properties
+     * @return {@link TracebackRenderer} instance
+     */
+    // called with the lock held
+    private TracebackRenderer getTracebackRenderer(Properties props) {
+        if (tracebackRenderer == null) {
+            tracebackRenderer = buildTracebackRenderer(props);
+        }
+        return tracebackRenderer;
+    }
+
+    /** exception rendering from jcdp.traceback.maxFrames, .fold and .cacheSize
+     *
+     * @param props JCDP properties
+     * @return {@link TracebackRenderer} instance
+     */
+    private TracebackRenderer buildTracebackRenderer(Properties props) {
+        String fold = props.getProperty("jcdp.traceback.fold", "").trim();
+        return new TracebackRenderer(
+                Integer.parseInt(props.getProperty("jcdp.traceback.maxFrames", "0")),
+                fold.isEmpty() ? new String[0] : fold.split("\\s*,\\s*"),
+                Integer.parseInt(props.getProperty("jcdp.traceback.cacheSize", "256")));
+    }
+
+    /** build marker rules from jcdp.marker.&lt;NAME&gt;.enabled, .file and .additive
+     *
+     * @param props JCDP properties
+     * @return {@link MarkerRules} instance; its sinks must be released when it is replaced
+     */
+    private MarkerRules buildMarkerRules(Properties props) {
+        Set<String> names = new HashSet<>();
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith("jcdp.marker.") && key.lastIndexOf('.') > "jcdp.marker.".length()) {
+                names.add(key.substring("jcdp.marker.".length(), key.lastIndexOf('.')));
+            }
+        }
+        if (names.isEmpty()) return MarkerRules.NONE;
+        // read all settings before opening any file, so a bad value leaves nothing open
+        Map<String, FileSettings> files = new HashMap<>();
+        for (String name : names) {
+            String path = props.getProperty("jcdp.marker." + name + ".file");
+            if (path != null) files.put(name, readFileSettings(props, "jcdp.file", new File(path), isFileJson(props)));
+        }
+        Map<String, MarkerRules.Rule> rules = new HashMap<>();
+        for (String name : names) {
+            String prefix = "jcdp.marker." + name;
+            rules.put(name, new MarkerRules.Rule(
+                    Boolean.valueOf(props.getProperty(prefix + ".enabled", "true")),
+                    acquireFileSink(files.get(name)),
+                    Boolean.valueOf(props.getProperty(prefix + ".additive", "false"))));
+        }
+        return new MarkerRules(rules);
+    }
+
+    /** build named sinks from jcdp.sink.&lt;NAME&gt;.path, .level, .format and .loggers.
+     * Buffering, flushing, mode and rolling settings are read from jcdp.sink.&lt;NAME&gt;.file settings
+     * without the "file" part, e.g. jcdp.sink.errors.buffer.size, and default to the jcdp.file.* ones.
+     *
+     * @param props JCDP properties
+     * @return {@link SinkRoutes} instance; its sinks must be released when it is replaced
+     */
+    private SinkRoutes buildSinkRoutes(Properties props) {
+        // sorted so routes are written in a stable order
+        Set<String> names = new TreeSet<>();
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith("jcdp.sink.") && key.endsWith(".path")
+                    && key.length() > "jcdp.sink.".length() + ".path".length()) {
+                names.add(key.substring("jcdp.sink.".length(), key.length() - ".path".length()));
+            }
+        }
+        if (names.isEmpty()) return SinkRoutes.NONE;
+        // read all settings before opening any file, so a bad value leaves nothing open
+        List<String> prefixes = new ArrayList<>();
+        List<JcdpLogLevel> levels = new ArrayList<>();
+        List<FileSettings> files = new ArrayList<>();
+        for (String name : names) {
+            String prefix = "jcdp.sink." + name;
+            JcdpLogLevel level;
+            try {
+                level = JcdpLogLevel.valueOf(props.getProperty(prefix + ".level", "INFO").trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                Util.report("Invalid " + prefix + ".level, sink " + name + " disabled", e);
+                continue;
+            }
+            boolean json = "json".equalsIgnoreCase(props.getProperty(prefix + ".format", "text"));
+            prefixes.add(prefix);
+            levels.add(level);
+            files.add(readFileSettings(props, prefix, new File(props.getProperty(prefix + ".path")), json));
+        }
+        List<SinkRoutes.Route> routes = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            LogSink sink = acquireFileSink(files.get(i));
+            if (sink == null) continue;
+            String loggers = props.getProperty(prefixes.get(i) + ".loggers", "").trim();
+            routes.add(new SinkRoutes.Route(sink, files.get(i).json, levels.get(i),
+                    loggers.isEmpty() ? null : loggers.split("\\s*,\\s*")));
+        }
+        return new SinkRoutes(routes);
+    }
 
-        JcdpLogLevel enabledLevel = JcdpLogLevel.valueOf(props.getProperty("jcdp.level", "INFO").toUpperCase());
+    private void releaseSinks(Collection<LogSink> sinks) {
+        for (LogSink sink : sinks) {
+            SinkRegistry.release(sink);
+        }
+    }
+
+    /** retrieve the shared asynchronous writer, starting it if necessary.
+     * Changes to its settings are only picked up by {@link #reconfigure()}.
+     *
+     * @param props JCDP properties
+     * @return {@link AsyncWriter} instance
+     */
+    // called with the lock held
+    private AsyncWriter getAsyncWriter(Properties props) {
+        if (asyncWriter == null) {
+            asyncWriter = buildAsyncWriter(props, null);
+        }
+        return asyncWriter;
+    }
+
+    /** build the asynchronous writer described by props, reusing the current one if nothing changed.
+     *
+     * @param props JCDP properties
+     * @param current {@link AsyncWriter} currently in use, can be null
+     * @return {@link AsyncWriter} instance, or null if async mode is disabled
+     */
+    private AsyncWriter buildAsyncWriter(Properties props, AsyncWriter current) {
+        if (!Boolean.valueOf(props.getProperty("jcdp.async.enabled", "false"))) return null;
+        int capacity = Integer.parseInt(props.getProperty("jcdp.async.capacity", "8192"));
+        AsyncWriter.Overflow overflow = AsyncWriter.Overflow.valueOf(
+                props.getProperty("jcdp.async.overflow", "BLOCK").toUpperCase());
+        if (current != null && current.capacity() == RingBuffer.sizeFor(capacity)
+                && current.getOverflow() == overflow) {
+            return current;
+        }
+        return new AsyncWriter(capacity, overflow);
+    }
+
+    /** whether console output should be colored. jcdp.color can be ALWAYS, NEVER or AUTO (default);
+     * AUTO disables colors when NO_COLOR is set (see no-color.org) or there is no terminal.
+     *
+     * @param props JCDP properties
+     * @return boolean
+     */
+    private boolean isColorEnabled(Properties props) {
+        String mode = props.getProperty("jcdp.color", "AUTO").toUpperCase();
+        if (mode.equals("ALWAYS")) return true;
+        if (mode.equals("NEVER")) return false;
+        String noColor = System.getenv("NO_COLOR");
+        return (noColor == null || noColor.isEmpty()) && isTerminal();
+    }
+
+    /** whether the JVM is attached to a terminal. From JDK 22, System.console() is there even when
+     * output is redirected, so Console.isTerminal() is asked where it exists.
+     *
+     * @return boolean
+     */
+    private static boolean isTerminal() {
+        Console console = System.console();
+        if (console == null) return false;
+        if (IS_TERMINAL == null) return true;
+        try {
+            return (Boolean) IS_TERMINAL.invoke(console);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return true;
+        }
+    }
+
+    private static Method findIsTerminal() {
+        try {
+            return Console.class.getMethod("isTerminal");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /** console destination, from jcdp.console.mode: STREAM (System.out, default) or DIRECT (stdout file descriptor)
+     *
+     * @param props JCDP properties
+     * @return {@link ConsoleSink} instance
+     */
+    private ConsoleSink getConsole(Properties props) {
+        return "direct".equalsIgnoreCase(props.getProperty("jcdp.console.mode", "stream").trim())
+                ? ConsoleSink.direct() : ConsoleSink.STREAM;
+    }
+
+    /** level at or above which console lines go to stderr, from jcdp.console.stderr.level
+     *
+     * @param props JCDP properties
+     * @return {@link JcdpLogLevel}, or null to print everything to stdout
+     */
+    private JcdpLogLevel getStderrLevel(Properties props) {
+        String level = props.getProperty("jcdp.console.stderr.level", "").trim();
+        return level.isEmpty() ? null : JcdpLogLevel.valueOf(level.toUpperCase());
+    }
+
+    /** MDC keys to print, from the comma-separated jcdp.mdc.keys
+     *
+     * @param props JCDP properties
+     * @return keys in print order, empty if none
+     */
+    private String[] getMdcKeys(Properties props) {
+        String keys = props.getProperty("jcdp.mdc.keys", "").trim();
+        return keys.isEmpty() ? new String[0] : keys.split("\\s*,\\s*");
+    }
+
+    /** metrics to hand to loggers, from jcdp.metrics.enabled
+     *
+     * @param props JCDP properties
+     * @return {@link JcdpMetrics} instance, or null if disabled
+     */
+    private JcdpMetrics getMetrics(Properties props) {
+        return Boolean.valueOf(props.getProperty("jcdp.metrics.enabled", "false")) ? metrics : null;
+    }
+
+    /** duplicate suppression for one logger, from jcdp.suppress.*
+     *
+     * @param props JCDP properties
+     * @return {@link Suppressor} instance, or null if disabled
+     */
+    private Suppressor buildSuppressor(Properties props) {
+        if (!Boolean.valueOf(props.getProperty("jcdp.suppress.enabled", "false"))) return null;
+        return new Suppressor(
+                Long.parseLong(props.getProperty("jcdp.suppress.window.ms", "10000")),
+                Integer.parseInt(props.getProperty("jcdp.suppress.maxEntries", "256")));
+    }
+
+    /** rate limit of a logger: the most specific jcdp.ratelimit.&lt;prefix&gt; matching its name,
+     * falling back to jcdp.ratelimit. Each logger gets its own bucket.
+     *
+     * @param props JCDP properties
+     * @param name logger name
+     * @return {@link RateLimiter} instance, or null for no limit
+     */
+    private RateLimiter getRateLimiter(Properties props, String name) {
+        String prefix = name;
+        String rate = null;
+        while (rate == null && !prefix.isEmpty()) {
+            rate = props.getProperty("jcdp.ratelimit." + prefix);
+            int dot = prefix.lastIndexOf('.');
+            prefix = dot < 0 ? "" : prefix.substring(0, dot);
+        }
+        if (rate == null) rate = props.getProperty("jcdp.ratelimit");
+        if (rate == null) return null;
+        try {
+            return RateLimiter.parse(rate);
+        } catch (IllegalArgumentException e) {
+            Util.report("Ignoring rate limit of " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** effective level of a logger: the most specific jcdp.level.&lt;prefix&gt; matching its name,
+     * e.g. jcdp.level.com.acme for com.acme.Foo, falling back to jcdp.level.
+     * Levels set through {@link #setLevel(String, JcdpLogLevel)} win over properties at the same depth.
+     * Resolved once per (re)configuration, never while logging.
+     *
+     * @param props JCDP properties
+     * @param name logger name
+     * @return {@link JcdpLogLevel}
+     */
+    private JcdpLogLevel getLevel(Properties props, String name) {
+        String prefix = name;
+        while (!prefix.isEmpty()) {
+            JcdpLogLevel override = levelOverrides.get(prefix);
+            if (override != null) return override;
+            String level = props.getProperty("jcdp.level." + prefix);
+            if (level != null) return JcdpLogLevel.valueOf(level.trim().toUpperCase());
+            int dot = prefix.lastIndexOf('.');
+            prefix = dot < 0 ? "" : prefix.substring(0, dot);
+        }
+        JcdpLogLevel override = levelOverrides.get("");
+        if (override != null) return override;
+        return JcdpLogLevel.valueOf(props.getProperty("jcdp.level", "INFO").toUpperCase());
+    }
+
+    /** build one printer per level, with colors taken from jcdp.LEVEL.background/foreground
+     *
+     * @param props JCDP properties
+     * @param enabledLevel {@link JcdpLogLevel} printers will be set to
+     * @return {@link com.diogonunes.jcdp.color.ColoredPrinter} array indexed by level number
+     */
+    private ColoredPrinter[] buildPrinters(Properties props, JcdpLogLevel enabledLevel) {
         boolean tsEnabled = Boolean.valueOf(props.getProperty("jcdp.timestamp.enabled", "false"));
-        boolean fileEnabled = Boolean.valueOf(props.getProperty("jcdp.file.enabled", "false"));
-        JcdpLogLevel fileLogLevel = JcdpLogLevel.valueOf(props.getProperty("jcdp.file.level", "INFO").toUpperCase());
-        File outputFile = new File(props.getProperty("jcdp.file.path", "tmp/test.txt"));
 
         ColoredPrinter[] printers = new ColoredPrinter[6];
         for (JcdpLogLevel level : JcdpLogLevel.values()) {
@@ -105,15 +736,169 @@ public class JcdpAdapterFactory implements ILoggerFactory {
             // push where it belongs
             printers[level.getLevel()] = printer;
         }
-        // create the adapter
-        JcdpAdapter adapter = new JcdpAdapter(enabledLevel, printers);
-        // file support, eventually
-        if (fileEnabled) {
-            Printer p = new Printer.Builder(Printer.Types.FILE)
-                    .level(fileLogLevel.getLevel())
-                    .withFile(outputFile).build();
-            adapter.setFilePrinter(p);
+        return printers;
+    }
+
+    private JcdpLogLevel getFileLevel(Properties props) {
+        return JcdpLogLevel.valueOf(props.getProperty("jcdp.file.level", "INFO").toUpperCase());
+    }
+
+    /** how timestamps are rendered, from jcdp.timestamp.format: jcdp (default), iso8601 or epoch
+     *
+     * @param props JCDP properties
+     * @return shared {@link TimestampFormatter}
+     */
+    private TimestampFormatter getTimestampFormat(Properties props) {
+        return TimestampFormatter.of(props.getProperty("jcdp.timestamp.format", "jcdp"));
+    }
+
+    /** whether files are written as JSON lines, from jcdp.file.format=json (default: text)
+     *
+     * @param props JCDP properties
+     * @return boolean
+     */
+    private boolean isFileJson(Properties props) {
+        return "json".equalsIgnoreCase(props.getProperty("jcdp.file.format", "text"));
+    }
+
+    /** kind of sink selected by jcdp.file.mode, or the mode of a named sink
+     *
+     * @param props JCDP properties
+     * @param prefix jcdp.file or jcdp.sink.&lt;NAME&gt;
+     * @return {@link MappedFileSink} for mmap, {@link FileSink} otherwise
+     */
+    private Class<? extends LogSink> getFileSinkType(Properties props, String prefix) {
+        return "mmap".equalsIgnoreCase(getFileProperty(props, prefix, ".mode", "buffered"))
+                ? MappedFileSink.class : FileSink.class;
+    }
+
+    /** a file setting of a named sink, falling back to the jcdp.file.* one
+     *
+     * @param props JCDP properties
+     * @param prefix jcdp.file or jcdp.sink.&lt;NAME&gt;
+     * @param suffix setting name, e.g. ".buffer.size"
+     * @param defaultValue value if neither is set
+     * @return {@link String} value
+     */
+    private static String getFileProperty(Properties props, String prefix, String suffix, String defaultValue) {
+        return props.getProperty(prefix + suffix, props.getProperty("jcdp.file" + suffix, defaultValue));
+    }
+
+    /** settings of the configured log file, if enabled
+     *
+     * @param props JCDP properties
+     * @return {@link FileSettings}, or null if file output is disabled
+     */
+    private FileSettings getFileSettings(Properties props) {
+        boolean fileEnabled = Boolean.valueOf(props.getProperty("jcdp.file.enabled", "false"));
+        if (!fileEnabled) return null;
+        return readFileSettings(props, "jcdp.file",
+                new File(props.getProperty("jcdp.file.path", "tmp/test.txt")), isFileJson(props));
+    }
+
+    /** parse the settings of a log file, without opening it
+     *
+     * @param props JCDP properties
+     * @param prefix where its settings are read from: jcdp.file or jcdp.sink.&lt;NAME&gt;
+     * @param outputFile {@link File} to log to
+     * @param json whether it is written as JSON lines
+     * @return {@link FileSettings} instance
+     * @throws IllegalArgumentException if a value is invalid
+     */
+    private FileSettings readFileSettings(Properties props, String prefix, File outputFile, boolean json) {
+        // JSON records carry their own timestamp
+        TimestampFormatter timestamps = Boolean.valueOf(props.getProperty("jcdp.timestamp.enabled", "false"))
+                && !json ? getTimestampFormat(props) : null;
+        RollingPolicy rolling = getRollingPolicy(props, prefix, outputFile);
+        if (getFileSinkType(props, prefix) == MappedFileSink.class) {
+            if (rolling != null) {
+                Util.report(prefix + ".rolling.* is ignored when " + prefix + ".mode=mmap");
+            }
+            return new FileSettings(outputFile, json, MappedFileSink.class, timestamps,
+                    RollingPolicy.parseSize(getFileProperty(props, prefix, ".mmap.regionSize",
+                            String.valueOf(MappedFileSink.DEFAULT_REGION_SIZE))),
+                    0, 0, null, null);
+        }
+        return new FileSettings(outputFile, json, FileSink.class, timestamps, 0,
+                Integer.parseInt(getFileProperty(props, prefix, ".buffer.size",
+                        String.valueOf(FileSink.DEFAULT_BUFFER_SIZE))),
+                Long.parseLong(getFileProperty(props, prefix, ".flush.interval.ms", "1000")),
+                JcdpLogLevel.valueOf(getFileProperty(props, prefix, ".flush.on.level", "ERROR").toUpperCase()),
+                rolling);
+    }
+
+    /** get the shared sink for a log file
+     *
+     * @param settings {@link FileSettings} of the file, can be null
+     * @return {@link LogSink} to release when done, or null if there are no settings or the file cannot be opened
+     */
+    private LogSink acquireFileSink(FileSettings settings) {
+        if (settings == null) return null;
+        try {
+            if (settings.type == MappedFileSink.class) {
+                MappedFileSink sink = SinkRegistry.acquire(settings.file, MappedFileSink.class,
+                        path -> new MappedFileSink(path, settings.regionSize));
+                sink.setTimestamps(settings.timestamps);
+                return sink;
+            }
+            FileSink sink = FileSink.acquire(settings.file);
+            sink.configure(settings.timestamps, settings.bufferSize, settings.flushIntervalMillis,
+                    settings.flushLevel, settings.rolling);
+            return sink;
+        } catch (IOException e) {
+            Util.report("Cannot open log file " + settings.file + ", file output disabled", e);
+            return null;
+        }
+    }
+
+    /** rolling settings for the log file, if any
+     *
+     * @param props JCDP properties
+     * @param prefix where its settings are read from: jcdp.file or jcdp.sink.&lt;NAME&gt;
+     * @param outputFile {@link File} being logged to
+     * @return {@link RollingPolicy}, or null if the file should never roll
+     */
+    private RollingPolicy getRollingPolicy(Properties props, String prefix, File outputFile) {
+        String maxSize = getFileProperty(props, prefix, ".rolling.maxSize", null);
+        // an explicit jcdp.file pattern names the main file's archives; other files roll by size
+        // unless they have a pattern of their own
+        String pattern = !"jcdp.file".equals(prefix) ? props.getProperty(prefix + ".rolling.pattern")
+                : outputFile.getPath().equals(props.getProperty("jcdp.file.path", "tmp/test.txt"))
+                ? props.getProperty("jcdp.file.rolling.pattern") : null;
+        if (maxSize == null && pattern == null) return null;
+        return new RollingPolicy(
+                maxSize == null ? 0 : RollingPolicy.parseSize(maxSize),
+                pattern == null ? outputFile.getPath() + ".%d{yyyy-MM-dd}.%i" : pattern,
+                Integer.parseInt(getFileProperty(props, prefix, ".rolling.maxHistory", "0")));
+    }
+
+    /** parsed settings of one log file */
+    private static final class FileSettings {
+        final File file;
+        final boolean json;
+        final Class<? extends LogSink> type;
+        // null for no timestamps
+        final TimestampFormatter timestamps;
+        // mmap mode only
+        final long regionSize;
+        // buffered mode only
+        final int bufferSize;
+        final long flushIntervalMillis;
+        final JcdpLogLevel flushLevel;
+        final RollingPolicy rolling;
+
+        FileSettings(File file, boolean json, Class<? extends LogSink> type, TimestampFormatter timestamps,
+                     long regionSize, int bufferSize, long flushIntervalMillis, JcdpLogLevel flushLevel,
+                     RollingPolicy rolling) {
+            this.file = file;
+            this.json = json;
+            this.type = type;
+            this.timestamps = timestamps;
+            this.regionSize = regionSize;
+            this.bufferSize = bufferSize;
+            this.flushIntervalMillis = flushIntervalMillis;
+            this.flushLevel = flushLevel;
+            this.rolling = rolling;
         }
-        return adapter;
     }
 }
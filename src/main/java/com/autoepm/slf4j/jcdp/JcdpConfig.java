@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.helpers.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Properties;
+
+/**
+ * Loads JCDP configuration: a jcdp.properties file, taken from the path in
+ * -Djcdp.configFile or else from the root of the classpath, with any
+ * jcdp.* system property overriding it.
+ */
+final class JcdpConfig {
+
+    static final String CONFIG_FILE_PROPERTY = "jcdp.configFile";
+    static final String DEFAULT_RESOURCE = "jcdp.properties";
+
+    private JcdpConfig() {
+    }
+
+    /** read the configuration file, if any, and overlay system properties.
+     * Callers must not modify the result, so it can be shared between threads.
+     *
+     * @return {@link java.util.Properties} containing only JCDP-related properties.
+     */
+    static Properties load() {
+        Properties props = new Properties();
+        URL url = locate();
+        if (url != null) {
+            try (InputStream in = url.openStream()) {
+                props.load(in);
+            } catch (IOException e) {
+                Util.report("Cannot read " + url + ", using system properties only", e);
+            }
+        }
+        Properties system = System.getProperties();
+        for (String key : system.stringPropertyNames()) {
+            if (key.startsWith("jcdp.")) props.setProperty(key, system.getProperty(key));
+        }
+        return props;
+    }
+
+    /** the configuration file on disk, so it can be watched for changes
+     *
+     * @return {@link File}, or null if there is none or it is not a plain file (e.g. inside a jar)
+     */
+    static File locateFile() {
+        String path = System.getProperty(CONFIG_FILE_PROPERTY);
+        if (path != null) return new File(path);
+        URL url = locate();
+        if (url == null || !"file".equals(url.getProtocol())) return null;
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static URL locate() {
+        String path = System.getProperty(CONFIG_FILE_PROPERTY);
+        if (path != null) {
+            File file = new File(path);
+            if (!file.isFile()) return null;
+            try {
+                return file.toURI().toURL();
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) loader = JcdpConfig.class.getClassLoader();
+        return loader == null ? ClassLoader.getSystemResource(DEFAULT_RESOURCE) : loader.getResource(DEFAULT_RESOURCE);
+    }
+}
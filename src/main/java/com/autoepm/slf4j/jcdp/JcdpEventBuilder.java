@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.Marker;
+
+import java.util.function.Supplier;
+
+/**
+ * Fluent construction of a log event, modelled after SLF4J 2's LoggingEventBuilder.
+ * Obtained from {@link JcdpLogger#atDebug()} and friends; when the level is disabled
+ * every method does nothing, so suppliers are never called.
+ */
+public interface JcdpEventBuilder {
+
+    JcdpEventBuilder setMessage(String message);
+
+    JcdpEventBuilder setMessage(Supplier<String> messageSupplier);
+
+    JcdpEventBuilder addArgument(Object argument);
+
+    JcdpEventBuilder addArgument(Supplier<?> argumentSupplier);
+
+    JcdpEventBuilder addMarker(Marker marker);
+
+    JcdpEventBuilder setCause(Throwable cause);
+
+    /** log the event built so far */
+    void log();
+
+    /** set the message and log the event
+     *
+     * @param message message or format
+     */
+    void log(String message);
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Supplier;
+
+/**
+ * Extension of {@link org.slf4j.Logger} with lazily evaluated arguments.
+ * Suppliers are only called once the level check has passed, so expensive
+ * diagnostics cost nothing when disabled:
+ * <pre>
+ * JcdpLogger log = JcdpLogger.getLogger(MyClass.class);
+ * log.debug("state {}", () -&gt; dumpState());
+ * log.atDebug().addArgument(this::dumpState).log("state {}");
+ * </pre>
+ */
+public interface JcdpLogger extends Logger {
+
+    /** retrieve a logger through SLF4J. This binding must be the one in use.
+     *
+     * @param name logger name
+     * @return {@link JcdpLogger} instance
+     */
+    static JcdpLogger getLogger(String name) {
+        return (JcdpLogger) LoggerFactory.getLogger(name);
+    }
+
+    /** retrieve a logger through SLF4J. This binding must be the one in use.
+     *
+     * @param clazz class named by the logger
+     * @return {@link JcdpLogger} instance
+     */
+    static JcdpLogger getLogger(Class<?> clazz) {
+        return (JcdpLogger) LoggerFactory.getLogger(clazz);
+    }
+
+    void trace(String format, Supplier<?>... arguments);
+
+    void debug(String format, Supplier<?>... arguments);
+
+    void info(String format, Supplier<?>... arguments);
+
+    void warn(String format, Supplier<?>... arguments);
+
+    void error(String format, Supplier<?>... arguments);
+
+    /** start building a TRACE event
+     *
+     * @return {@link JcdpEventBuilder}, doing nothing if TRACE is disabled
+     */
+    JcdpEventBuilder atTrace();
+
+    JcdpEventBuilder atDebug();
+
+    JcdpEventBuilder atInfo();
+
+    JcdpEventBuilder atWarn();
+
+    JcdpEventBuilder atError();
+}
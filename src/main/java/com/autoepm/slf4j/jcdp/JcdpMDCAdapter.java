@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.spi.MDCAdapter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * MDC implementation for this binding. Each thread holds a map that is never
+ * modified once published: writes replace it with a modified copy, so that
+ * log calls can read it without locking or copying.
+ * With jcdp.mdc.inheritable=true, new threads start with their parent's context.
+ */
+public class JcdpMDCAdapter implements MDCAdapter {
+
+    // shared by all instances so loggers can read it without a reference to the adapter
+    private static final ThreadLocal<Map<String, String>> CONTEXT =
+            Boolean.valueOf(JcdpConfig.load().getProperty("jcdp.mdc.inheritable", "false"))
+                    ? new InheritableThreadLocal<>() : new ThreadLocal<>();
+
+    /** current thread's context, without copying
+     *
+     * @return read-only map, or null if empty
+     */
+    static Map<String, String> context() {
+        return CONTEXT.get();
+    }
+
+    @Override
+    public void put(String key, String val) {
+        if (key == null) throw new IllegalArgumentException("key cannot be null");
+        Map<String, String> current = CONTEXT.get();
+        Map<String, String> updated = current == null ? new HashMap<>(4) : new HashMap<>(current);
+        updated.put(key, val);
+        CONTEXT.set(updated);
+    }
+
+    @Override
+    public String get(String key) {
+        Map<String, String> current = CONTEXT.get();
+        return current == null ? null : current.get(key);
+    }
+
+    @Override
+    public void remove(String key) {
+        Map<String, String> current = CONTEXT.get();
+        if (current == null || !current.containsKey(key)) return;
+        if (current.size() == 1) {
+            CONTEXT.remove();
+            return;
+        }
+        Map<String, String> updated = new HashMap<>(current);
+        updated.remove(key);
+        CONTEXT.set(updated);
+    }
+
+    @Override
+    public void clear() {
+        CONTEXT.remove();
+    }
+
+    @Override
+    public Map<String, String> getCopyOfContextMap() {
+        Map<String, String> current = CONTEXT.get();
+        return current == null ? null : new HashMap<>(current);
+    }
+
+    @Override
+    public void setContextMap(Map<String, String> contextMap) {
+        if (contextMap == null || contextMap.isEmpty()) {
+            CONTEXT.remove();
+        } else {
+            CONTEXT.set(new HashMap<>(contextMap));
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.Util;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters kept by the binding when jcdp.metrics.enabled=true: events per level and per logger,
+ * bytes written per destination, events dropped, asynchronous queue depth,
+ * and a histogram of the time taken to write each event to its destinations.
+ * When disabled, loggers hold no reference to it and pay a single null check.
+ * <pre>
+ * JcdpMetrics.Snapshot s = JcdpMetrics.get().snapshot();
+ * long errors = s.getEvents().get(JcdpLogLevel.ERROR);
+ * </pre>
+ */
+public final class JcdpMetrics implements JcdpMetricsMXBean {
+
+    static final String OBJECT_NAME = "com.autoepm.slf4j.jcdp:type=Metrics";
+    static final String CONSOLE = "console";
+
+    /** counters of one logger */
+    static final class Counters {
+        final JcdpMetrics metrics;
+        final LongAdder[] events = new LongAdder[JcdpLogLevel.values().length + 1];
+
+        Counters(JcdpMetrics metrics) {
+            this.metrics = metrics;
+            for (int i = 0; i < events.length; i++) {
+                events[i] = new LongAdder();
+            }
+        }
+
+        void event(JcdpLogLevel level) {
+            events[level.getLevel()].increment();
+        }
+    }
+
+    private final JcdpAdapterFactory factory;
+    final LatencyHistogram writeLatency = new LatencyHistogram();
+    final LongAdder consoleBytes = new LongAdder();
+    final LongAdder throttled = new LongAdder();
+
+    JcdpMetrics(JcdpAdapterFactory factory) {
+        this.factory = factory;
+    }
+
+    /** metrics of the factory bound to SLF4J
+     *
+     * @return {@link JcdpMetrics} instance, or null if SLF4J is bound to something else
+     */
+    public static JcdpMetrics get() {
+        ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+        return loggerFactory instanceof JcdpAdapterFactory ? ((JcdpAdapterFactory) loggerFactory).getMetrics() : null;
+    }
+
+    /** register with the platform MBean server, replacing any previous registration
+     *
+     * @param metrics {@link JcdpMetrics} to expose
+     */
+    static void register(JcdpMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(metrics, name);
+        } catch (JMException | SecurityException e) {
+            Util.report("Cannot register " + OBJECT_NAME, e);
+        }
+    }
+
+    /** read every counter. Cheap enough to call every few seconds, not on every event.
+     *
+     * @return {@link Snapshot} of current values
+     */
+    public Snapshot snapshot() {
+        Map<JcdpLogLevel, Long> events = new EnumMap<>(JcdpLogLevel.class);
+        for (JcdpLogLevel level : JcdpLogLevel.values()) {
+            events.put(level, 0L);
+        }
+        Map<String, Long> loggerEvents = new TreeMap<>();
+        for (JcdpAdapter adapter : factory.getLoggers()) {
+            Counters counters = adapter.getMetricsCounters();
+            if (counters == null) continue;
+            long total = 0;
+            for (JcdpLogLevel level : JcdpLogLevel.values()) {
+                long count = counters.events[level.getLevel()].sum();
+                events.put(level, events.get(level) + count);
+                total += count;
+            }
+            if (total > 0) loggerEvents.put(adapter.getName(), total);
+        }
+        Map<String, Long> bytes = new TreeMap<>(SinkRegistry.bytesWritten());
+        bytes.put(CONSOLE, consoleBytes.sum());
+        AsyncWriter writer = factory.getCurrentAsyncWriter();
+        return new Snapshot(events, loggerEvents, bytes, throttled.sum(),
+                writer == null ? 0 : writer.getDroppedCount(), writer == null ? 0 : writer.getQueueDepth(),
+                writeLatency.snapshot());
+    }
+
+    /**
+     * Values of all counters at one point in time.
+     */
+    public static final class Snapshot {
+        private final Map<JcdpLogLevel, Long> events;
+        private final Map<String, Long> loggerEvents;
+        private final Map<String, Long> bytesWritten;
+        private final long throttled;
+        private final long dropped;
+        private final int queueDepth;
+        private final LatencyHistogram.Snapshot latency;
+
+        Snapshot(Map<JcdpLogLevel, Long> events, Map<String, Long> loggerEvents, Map<String, Long> bytesWritten,
+                 long throttled, long dropped, int queueDepth, LatencyHistogram.Snapshot latency) {
+            this.events = Collections.unmodifiableMap(events);
+            this.loggerEvents = Collections.unmodifiableMap(loggerEvents);
+            this.bytesWritten = Collections.unmodifiableMap(bytesWritten);
+            this.throttled = throttled;
+            this.dropped = dropped;
+            this.queueDepth = queueDepth;
+            this.latency = latency;
+        }
+
+        /** @return events logged per level, every level included */
+        public Map<JcdpLogLevel, Long> getEvents() {
+            return events;
+        }
+
+        /** @return events logged per logger name, for loggers that logged anything */
+        public Map<String, Long> getLoggerEvents() {
+            return loggerEvents;
+        }
+
+        /** @return bytes written per destination: "console", or the path of each open file */
+        public Map<String, Long> getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /** @return events dropped by duplicate suppression or rate limits */
+        public long getThrottled() {
+            return throttled;
+        }
+
+        /** @return events dropped because the asynchronous buffer was full */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /** @return events waiting in the asynchronous buffer */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /** @return number of events written */
+        public long getWriteCount() {
+            return latency.count;
+        }
+
+        /** time taken to write an event to its destinations
+         *
+         * @param percentile 0 to 100, e.g. 99.9
+         * @return nanoseconds, within 12.5%
+         */
+        public long getWriteLatency(double percentile) {
+            return latency.percentile(percentile);
+        }
+
+        /** @return mean time taken to write an event, in nanoseconds */
+        public long getWriteLatencyMean() {
+            return latency.mean();
+        }
+
+        /** @return longest time taken to write an event, in nanoseconds */
+        public long getWriteLatencyMax() {
+            return latency.max;
+        }
+    }
+
+    /* --- JMX --- */
+
+    @Override
+    public Map<String, Long> getEventsByLevel() {
+        Map<String, Long> byName = new HashMap<>();
+        for (Map.Entry<JcdpLogLevel, Long> entry : snapshot().getEvents().entrySet()) {
+            byName.put(entry.getKey().toString(), entry.getValue());
+        }
+        return byName;
+    }
+
+    @Override
+    public Map<String, Long> getEventsByLogger() {
+        return snapshot().getLoggerEvents();
+    }
+
+    @Override
+    public Map<String, Long> getBytesWritten() {
+        return snapshot().getBytesWritten();
+    }
+
+    @Override
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        AsyncWriter writer = factory.getCurrentAsyncWriter();
+        return writer == null ? 0 : writer.getDroppedCount();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        AsyncWriter writer = factory.getCurrentAsyncWriter();
+        return writer == null ? 0 : writer.getQueueDepth();
+    }
+
+    @Override
+    public long getWriteCount() {
+        return writeLatency.snapshot().count;
+    }
+
+    @Override
+    public long getWriteLatencyMean() {
+        return writeLatency.snapshot().mean();
+    }
+
+    @Override
+    public long getWriteLatencyP50() {
+        return writeLatency.snapshot().percentile(50);
+    }
+
+    @Override
+    public long getWriteLatencyP99() {
+        return writeLatency.snapshot().percentile(99);
+    }
+
+    @Override
+    public long getWriteLatencyP999() {
+        return writeLatency.snapshot().percentile(99.9);
+    }
+
+    @Override
+    public long getWriteLatencyMax() {
+        return writeLatency.snapshot().max;
+    }
+}
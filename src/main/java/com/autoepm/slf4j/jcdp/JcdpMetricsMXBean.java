@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link JcdpMetrics}, registered as com.autoepm.slf4j.jcdp:type=Metrics.
+ * Latencies are in nanoseconds. All values are zero unless jcdp.metrics.enabled=true.
+ */
+public interface JcdpMetricsMXBean {
+
+    /** @return events logged per level name */
+    Map<String, Long> getEventsByLevel();
+
+    /** @return events logged per logger name, for loggers that logged anything */
+    Map<String, Long> getEventsByLogger();
+
+    /** @return bytes written per destination: "console", or the path of each open file */
+    Map<String, Long> getBytesWritten();
+
+    /** @return events dropped by duplicate suppression or rate limits */
+    long getThrottledCount();
+
+    /** @return events dropped because the asynchronous buffer was full */
+    long getDroppedCount();
+
+    /** @return events waiting in the asynchronous buffer */
+    int getQueueDepth();
+
+    /** @return number of events written */
+    long getWriteCount();
+
+    /** @return mean time taken to write an event */
+    long getWriteLatencyMean();
+
+    /** @return median time taken to write an event */
+    long getWriteLatencyP50();
+
+    /** @return 99th percentile of the time taken to write an event */
+    long getWriteLatencyP99();
+
+    /** @return 99.9th percentile of the time taken to write an event */
+    long getWriteLatencyP999();
+
+    /** @return longest time taken to write an event */
+    long getWriteLatencyMax();
+}
@@ -26,6 +26,7 @@ package com.autoepm.slf4j.jcdp;
 
 import org.slf4j.ILoggerFactory;
 import org.slf4j.helpers.NOPServiceProvider;
+import org.slf4j.spi.MDCAdapter;
 
 /**
  * Service provider for modern SLF4J to load.
@@ -39,12 +40,18 @@ public class JcdpProvider extends NOPServiceProvider {
     public static String REQUESTED_API_VERSION = "1.8.99";
 
     private ILoggerFactory loggerFactory;
+    private MDCAdapter mdcAdapter;
 
     @Override
     public ILoggerFactory getLoggerFactory() {
         return loggerFactory;
     }
 
+    @Override
+    public MDCAdapter getMDCAdapter() {
+        return mdcAdapter;
+    }
+
     @Override
     public String getRequesteApiVersion() {
         return REQUESTED_API_VERSION;
@@ -52,6 +59,15 @@ public class JcdpProvider extends NOPServiceProvider {
 
     @Override
     public void initialize() {
-        loggerFactory = new JcdpAdapterFactory();
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        // flush anything still queued when the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(factory::shutdown, "jcdp-shutdown"));
+        if (factory.isJmxEnabled()) {
+            LoggingControl.register(factory);
+            JcdpMetrics.register(factory.getMetrics());
+        }
+        factory.watchConfig();
+        loggerFactory = factory;
+        mdcAdapter = new JcdpMDCAdapter();
     }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams a log event as a single-line JSON object (jcdp.file.format=json), e.g.
+ * <pre>
+ * {"timestamp":1546300800000,"level":"ERROR","logger":"com.acme.Foo","thread":"main",
+ *  "message":"failed","mdc":{"requestId":"42"},
+ *  "exception":{"class":"java.io.IOException","message":"boom","frames":["com.acme.Foo.bar(Foo.java:12)"]}}
+ * </pre>
+ * The timestamp is a string with jcdp.timestamp.format=iso8601, epoch millis otherwise.
+ * Exceptions also carry "suppressed" and "cause" when present.
+ */
+final class JsonEncoder {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private JsonEncoder() {
+    }
+
+    /** append an event as JSON, without a trailing newline
+     *
+     * @param sb {@link StringBuilder} to append to
+     * @param timestamps {@link TimestampFormatter} in use
+     * @param millis time of the event
+     * @param level {@link JcdpLogLevel}
+     * @param logger logger name
+     * @param thread thread name
+     * @param message message
+     * @param mdc MDC values, can be null
+     * @param t {@link Throwable} exception, can be null
+     */
+    static void encode(StringBuilder sb, TimestampFormatter timestamps, long millis, JcdpLogLevel level,
+                       String logger, String thread, CharSequence message, Map<String, String> mdc, Throwable t) {
+        sb.append("{\"timestamp\":");
+        if (timestamps.getStyle() == TimestampFormatter.Style.ISO8601) {
+            sb.append('"');
+            timestamps.format(millis, sb);
+            sb.append('"');
+        } else {
+            sb.append(millis);
+        }
+        sb.append(",\"level\":\"").append(level.name()).append('"');
+        sb.append(",\"logger\":");
+        string(sb, logger);
+        sb.append(",\"thread\":");
+        string(sb, thread);
+        sb.append(",\"message\":");
+        string(sb, message);
+        if (mdc != null && !mdc.isEmpty()) {
+            sb.append(",\"mdc\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> entry : mdc.entrySet()) {
+                if (!first) sb.append(',');
+                first = false;
+                string(sb, entry.getKey());
+                sb.append(':');
+                string(sb, entry.getValue());
+            }
+            sb.append('}');
+        }
+        if (t != null) {
+            sb.append(",\"exception\":");
+            throwable(sb, t, Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+        sb.append('}');
+    }
+
+    private static void throwable(StringBuilder sb, Throwable t, Set<Throwable> seen) {
+        if (!seen.add(t)) {
+            sb.append("{\"circular\":");
+            string(sb, t.toString());
+            sb.append('}');
+            return;
+        }
+        sb.append("{\"class\":");
+        string(sb, t.getClass().getName());
+        sb.append(",\"message\":");
+        string(sb, t.getMessage());
+        sb.append(",\"frames\":[");
+        StackTraceElement[] frames = t.getStackTrace();
+        for (int i = 0; i < frames.length; i++) {
+            if (i > 0) sb.append(',');
+            frame(sb, frames[i]);
+        }
+        sb.append(']');
+        Throwable[] suppressed = t.getSuppressed();
+        if (suppressed.length > 0) {
+            sb.append(",\"suppressed\":[");
+            for (int i = 0; i < suppressed.length; i++) {
+                if (i > 0) sb.append(',');
+                throwable(sb, suppressed[i], seen);
+            }
+            sb.append(']');
+        }
+        Throwable cause = t.getCause();
+        if (cause != null) {
+            sb.append(",\"cause\":");
+            throwable(sb, cause, seen);
+        }
+        sb.append('}');
+    }
+
+    /** a frame as a string, like {@link StackTraceElement#toString()} without module details */
+    private static void frame(StringBuilder sb, StackTraceElement frame) {
+        sb.append('"');
+        escape(sb, frame.getClassName());
+        sb.append('.');
+        escape(sb, frame.getMethodName());
+        sb.append('(');
+        if (frame.isNativeMethod()) {
+            sb.append("Native Method");
+        } else if (frame.getFileName() == null) {
+            sb.append("Unknown Source");
+        } else {
+            escape(sb, frame.getFileName());
+            if (frame.getLineNumber() >= 0) sb.append(':').append(frame.getLineNumber());
+        }
+        sb.append(")\"");
+    }
+
+    /** append a JSON string, or null */
+    private static void string(StringBuilder sb, CharSequence cs) {
+        if (cs == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        escape(sb, cs);
+        sb.append('"');
+    }
+
+    private static void escape(StringBuilder sb, CharSequence cs) {
+        int length = cs.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = cs.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') continue;
+            // copy the run of plain characters, then the escape
+            sb.append(cs, start, i);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        sb.append(cs, start, length);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+/**
+ * Destination for formatted events, shared between loggers through {@link SinkRegistry}.
+ */
+interface LogSink {
+
+    /** append one event, followed by a newline.
+     *
+     * @param text event, can span several lines; not retained after the call
+     * @param level {@link JcdpLogLevel} of the event
+     * @param millis time of the event, for timestamps
+     */
+    void write(CharSequence text, JcdpLogLevel level, long millis);
+
+    /** append one event that happens now, followed by a newline.
+     *
+     * @param text event, can span several lines; not retained after the call
+     * @param level {@link JcdpLogLevel} of the event
+     */
+    default void write(CharSequence text, JcdpLogLevel level) {
+        write(text, level, System.currentTimeMillis());
+    }
+
+    /** push anything buffered to the OS */
+    void flush();
+
+    /** flush and release resources; called by {@link SinkRegistry} when the last user is gone */
+    void close();
+
+    /** @return canonical path this sink writes to */
+    String getPath();
+
+    /** @return bytes written since the sink was opened, for {@link JcdpMetrics} */
+    long getBytesWritten();
+}
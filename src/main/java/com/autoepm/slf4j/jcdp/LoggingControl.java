@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.helpers.Util;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Exposes {@link JcdpAdapterFactory} level controls over JMX,
+ * so verbosity can be changed on a running JVM.
+ */
+class LoggingControl implements LoggingControlMXBean {
+
+    static final String OBJECT_NAME = "com.autoepm.slf4j.jcdp:type=LoggingControl";
+
+    private final JcdpAdapterFactory factory;
+
+    LoggingControl(JcdpAdapterFactory factory) {
+        this.factory = factory;
+    }
+
+    /** register with the platform MBean server, replacing any previous registration
+     *
+     * @param factory {@link JcdpAdapterFactory} to control
+     */
+    static void register(JcdpAdapterFactory factory) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(new LoggingControl(factory), name);
+        } catch (JMException | SecurityException e) {
+            Util.report("Cannot register " + OBJECT_NAME, e);
+        }
+    }
+
+    @Override
+    public List<String> getLoggerNames() {
+        return factory.getLoggerNames();
+    }
+
+    @Override
+    public String getLevel(String loggerName) {
+        return factory.getLevel(loggerName).toString();
+    }
+
+    @Override
+    public void setLevel(String prefix, String level) {
+        factory.setLevel(prefix, level == null || level.trim().isEmpty()
+                ? null : JcdpLogLevel.valueOf(level.trim().toUpperCase()));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import java.util.List;
+
+/**
+ * JMX view of the logging configuration, registered as
+ * com.autoepm.slf4j.jcdp:type=LoggingControl. Levels are passed as strings
+ * (ERROR, WARN, INFO, DEBUG or TRACE) so any JMX console can use it.
+ */
+public interface LoggingControlMXBean {
+
+    /** names of all loggers created so far
+     *
+     * @return sorted list of names
+     */
+    List<String> getLoggerNames();
+
+    /** current level of a logger
+     *
+     * @param loggerName logger name
+     * @return level name
+     */
+    String getLevel(String loggerName);
+
+    /** change the level of a logger and all loggers below it
+     *
+     * @param prefix logger name or package, or ROOT for every logger
+     * @param level level name, or an empty string to go back to the configured level
+     */
+    void setLevel(String prefix, String level);
+}
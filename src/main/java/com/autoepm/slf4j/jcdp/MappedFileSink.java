@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.helpers.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Log file written through memory-mapped regions ({@code jcdp.file.mode=mmap}).
+ * <p>
+ * Writers reserve space in the current region by bumping an atomic position,
+ * then copy their bytes in without taking any lock. When a region fills up,
+ * the file is extended and the next region mapped; whoever overran the end pads
+ * the leftover space with blanks. An event too big for one region is written under the lock instead,
+ * across as many regions as it needs. On close, the file is trimmed to what was written.
+ * Data is in the OS page cache as soon as it is copied, so it survives a JVM crash.
+ */
+final class MappedFileSink implements LogSink {
+
+    static final long DEFAULT_REGION_SIZE = 64L << 20;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(Charset.defaultCharset());
+
+    /** one mapped window of the file */
+    private static final class Region {
+        final MappedByteBuffer buffer;
+        final long base;
+        final int capacity;
+        final AtomicInteger position = new AtomicInteger();
+
+        Region(MappedByteBuffer buffer, long base) {
+            this.buffer = buffer;
+            this.base = base;
+            this.capacity = buffer.capacity();
+        }
+    }
+
+    /** per-thread encoding scratch space */
+    private static final class Scratch {
+        final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(1024);
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final String path;
+    private final FileChannel channel;
+    private final int regionSize;
+    private volatile Region region;
+    private final ReentrantLock lock = new ReentrantLock();
+    // where this sink started appending
+    private final long start;
+    private volatile TimestampFormatter timestamps = null;
+    // writers currently copying into a region; close waits for them before trimming the file
+    private final AtomicInteger writers = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    /** Constructor. Maps the first region right after any existing content.
+     *
+     * @param path canonical path of the file
+     * @param regionSize bytes mapped at a time
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    MappedFileSink(String path, long regionSize) throws IOException {
+        this.path = path;
+        this.regionSize = (int) Math.min(Integer.MAX_VALUE, Math.max(64 * 1024, regionSize));
+        Path file = new File(path).toPath();
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.start = channel.size();
+        this.region = map(start);
+    }
+
+    private Region map(long base) throws IOException {
+        return new Region(channel.map(FileChannel.MapMode.READ_WRITE, base, regionSize), base);
+    }
+
+    /** prefix lines with a timestamp
+     *
+     * @param timestamps {@link TimestampFormatter}, or null for none
+     */
+    void setTimestamps(TimestampFormatter timestamps) {
+        this.timestamps = timestamps;
+    }
+
+    @Override
+    public void write(CharSequence text, JcdpLogLevel level, long millis) {
+        ByteBuffer bytes = encode(text, millis);
+        // announce ourselves before checking closed, so close() either sees us or we see it
+        writers.incrementAndGet();
+        try {
+            if (closed) return;
+            if (bytes.remaining() > regionSize) {
+                writeAcrossRegions(bytes);
+                return;
+            }
+            Region current = region;
+            while (true) {
+                int length = bytes.remaining();
+                int offset = current.position.getAndAdd(length);
+                if (offset + length <= current.capacity) {
+                    copy(bytes, current, offset, length);
+                    return;
+                }
+                if (offset < current.capacity) pad(current, offset);
+                current = nextRegion(current);
+                if (current == null) return;
+            }
+        } finally {
+            writers.decrementAndGet();
+        }
+    }
+
+    /** write an event bigger than a region: take what is left of the current region,
+     * then map new regions until it is all written. Holding the lock keeps other writers
+     * out of the new regions, so the event stays in one piece.
+     */
+    private void writeAcrossRegions(ByteBuffer bytes) {
+        lock.lock();
+        try {
+            if (closed) return;
+            Region current = region;
+            // claim the rest of the region; writers that overflow it then wait for the lock in nextRegion
+            int offset;
+            do {
+                offset = current.position.get();
+            } while (offset < current.capacity && !current.position.compareAndSet(offset, current.capacity));
+            if (offset < current.capacity) copy(bytes, current, offset, current.capacity - offset);
+            while (bytes.hasRemaining()) {
+                Region next = map(current.base + current.capacity);
+                int length = Math.min(bytes.remaining(), next.capacity);
+                copy(bytes, next, 0, length);
+                next.position.set(length);
+                region = next;
+                current = next;
+            }
+        } catch (IOException e) {
+            Util.report("Failed to extend " + path, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** copy the next length bytes into a region */
+    private static void copy(ByteBuffer bytes, Region region, int offset, int length) {
+        ByteBuffer target = region.buffer.duplicate();
+        target.position(offset);
+        int end = bytes.limit();
+        bytes.limit(bytes.position() + length);
+        target.put(bytes);
+        bytes.limit(end);
+    }
+
+    /** encode timestamp, text and newline into this thread's scratch buffer */
+    private ByteBuffer encode(CharSequence text, long millis) {
+        Scratch scratch = SCRATCH.get();
+        CharsetEncoder encoder = scratch.encoder;
+        TimestampFormatter timestamps = this.timestamps;
+        int prefixLength = timestamps == null ? 0 : timestamps.maxLength() + 1;
+        int maxLength = prefixLength + (int) (text.length() * encoder.maxBytesPerChar()) + NEWLINE.length;
+        if (scratch.bytes.capacity() < maxLength) {
+            scratch.bytes = ByteBuffer.allocate(Math.max(maxLength, scratch.bytes.capacity() * 2));
+        }
+        ByteBuffer bytes = scratch.bytes;
+        bytes.clear();
+        if (timestamps != null) {
+            timestamps.format(millis, bytes);
+            bytes.put((byte) ' ');
+        }
+        EventBuffer buffer = EventBuffer.get();
+        CharBuffer in = buffer.wrap(text);
+        encoder.reset();
+        encoder.encode(in, bytes, true);
+        encoder.flush(bytes);
+        buffer.release(in);
+        bytes.put(NEWLINE);
+        bytes.flip();
+        return bytes;
+    }
+
+    /** fill the unusable tail of a region with a blank line */
+    private static void pad(Region region, int offset) {
+        ByteBuffer target = region.buffer.duplicate();
+        target.position(offset);
+        while (target.remaining() > 1) {
+            target.put((byte) ' ');
+        }
+        target.put((byte) '\n');
+    }
+
+    /** map the region after a full one, unless another writer already did.
+     *
+     * @return the current region, or null if the sink is closed or cannot grow
+     */
+    private Region nextRegion(Region full) {
+        // a ReentrantLock rather than a monitor: mapping does I/O, which must not pin virtual threads
+        lock.lock();
+        try {
+            if (closed) return null;
+            if (region == full) region = map(full.base + full.capacity);
+            return region;
+        } catch (IOException e) {
+            Util.report("Failed to extend " + path, e);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() {
+        Region current = region;
+        if (current != null && !closed) current.buffer.force();
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        // not holding the lock here: writers may need it to map a region before giving up
+        while (writers.get() > 0) {
+            Thread.yield();
+        }
+        Region last = region;
+        try {
+            last.buffer.force();
+            channel.truncate(last.base + Math.min(last.position.get(), last.capacity));
+            channel.close();
+        } catch (IOException e) {
+            Util.report("Failed to close " + path, e);
+        }
+    }
+
+    @Override
+    public long getBytesWritten() {
+        // includes padding at the end of full regions
+        Region current = region;
+        return current.base + Math.min(current.position.get(), current.capacity) - start;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+}
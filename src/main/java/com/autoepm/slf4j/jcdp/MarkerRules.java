@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.Marker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * What to do with events carrying a given marker, from jcdp.marker.&lt;NAME&gt;.* properties.
+ * A marker matches the rule of the first marker with a rule found in itself or its references.
+ * That resolution is done once per marker and cached, so logging with a marker costs one lookup.
+ */
+final class MarkerRules {
+
+    /** what happens to an event with a given marker */
+    static final class Rule {
+        final boolean enabled;
+        // dedicated file, or null to use the logger's destinations
+        final LogSink sink;
+        // whether events routed to a dedicated file also go to the logger's destinations
+        final boolean additive;
+
+        Rule(boolean enabled, LogSink sink, boolean additive) {
+            this.enabled = enabled;
+            this.sink = sink;
+            this.additive = additive;
+        }
+    }
+
+    /** rule for events without a marker, or whose markers have no rule */
+    static final Rule DEFAULT = new Rule(true, null, true);
+    static final MarkerRules NONE = new MarkerRules(Collections.emptyMap());
+
+    // markers are usually constants, but guard against ones created per call
+    private static final int MAX_CACHED = 1024;
+
+    private final Map<String, Rule> rules;
+    private final ConcurrentMap<Marker, Rule> resolved = new ConcurrentHashMap<>();
+
+    /** constructor
+     *
+     * @param rules {@link Rule} by marker name
+     */
+    MarkerRules(Map<String, Rule> rules) {
+        this.rules = rules;
+    }
+
+    /** rule for events with this marker
+     *
+     * @param marker {@link Marker}, can be null
+     * @return {@link Rule}, {@link #DEFAULT} if none applies
+     */
+    Rule get(Marker marker) {
+        if (marker == null || rules.isEmpty()) return DEFAULT;
+        Rule rule = resolved.get(marker);
+        if (rule != null) return rule;
+        rule = resolve(marker);
+        if (resolved.size() < MAX_CACHED) resolved.put(marker, rule);
+        return rule;
+    }
+
+    /** sinks opened for these rules, to release when they are replaced
+     *
+     * @return {@link LogSink} instances, once per rule: a file shared by two rules is listed twice
+     */
+    List<LogSink> getSinks() {
+        List<LogSink> sinks = new ArrayList<>();
+        for (Rule rule : rules.values()) {
+            if (rule.sink != null) sinks.add(rule.sink);
+        }
+        return sinks;
+    }
+
+    private Rule resolve(Marker marker) {
+        // breadth-first, so the closest marker with a rule wins
+        Deque<Marker> pending = new ArrayDeque<>();
+        Set<Marker> seen = new HashSet<>();
+        pending.add(marker);
+        while (!pending.isEmpty()) {
+            Marker current = pending.poll();
+            if (!seen.add(current)) continue;
+            Rule rule = rules.get(current.getName());
+            if (rule != null) return rule;
+            Iterator<Marker> references = current.iterator();
+            while (references.hasNext()) {
+                pending.add(references.next());
+            }
+        }
+        return DEFAULT;
+    }
+}
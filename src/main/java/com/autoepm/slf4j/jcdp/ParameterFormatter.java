@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.helpers.MessageFormatter;
+import org.slf4j.helpers.Util;
+
+/**
+ * Garbage-free counterpart of {@link MessageFormatter}: substitutes {@code {}} placeholders
+ * straight into a caller-supplied {@link StringBuilder}, with the same escaping rules.
+ * As with {@link MessageFormatter}, a trailing {@link Throwable} argument is not formatted
+ * but returned, to be logged as the event's exception.
+ * Strings, boxed primitives and booleans are appended without allocating;
+ * other arguments still go through their {@code toString()}.
+ */
+final class ParameterFormatter {
+
+    private ParameterFormatter() {
+    }
+
+    static Throwable format(StringBuilder sb, String pattern, Object arg) {
+        return format(sb, pattern, arg, null, null, 1);
+    }
+
+    static Throwable format(StringBuilder sb, String pattern, Object arg1, Object arg2) {
+        return format(sb, pattern, arg1, arg2, null, 2);
+    }
+
+    static Throwable format(StringBuilder sb, String pattern, Object[] args) {
+        return format(sb, pattern, null, null, args, args == null ? 0 : args.length);
+    }
+
+    /** arguments come either as the first two parameters or as an array, so that the
+     * common one- and two-argument calls need no array
+     *
+     * @return the trailing {@link Throwable} argument, or null if there is none
+     */
+    private static Throwable format(StringBuilder sb, String pattern, Object arg1, Object arg2, Object[] args,
+                                    int count) {
+        Object last = count == 0 ? null : args != null ? args[count - 1] : count == 1 ? arg1 : arg2;
+        Throwable t = null;
+        if (last instanceof Throwable) {
+            t = (Throwable) last;
+            count--;
+        }
+        if (pattern == null) {
+            sb.append((String) null);
+            return t;
+        }
+        int i = 0;
+        for (int arg = 0; arg < count; arg++) {
+            int j = pattern.indexOf("{}", i);
+            if (j == -1) break;
+            if (j > 0 && pattern.charAt(j - 1) == '\\') {
+                if (j > 1 && pattern.charAt(j - 2) == '\\') {
+                    // double escape: keep one backslash, then substitute
+                    sb.append(pattern, i, j - 1);
+                    appendParameter(sb, args != null ? args[arg] : arg == 0 ? arg1 : arg2);
+                    i = j + 2;
+                } else {
+                    // escaped placeholder: print it as is and keep the argument for the next one
+                    arg--;
+                    sb.append(pattern, i, j - 1).append('{');
+                    i = j + 1;
+                }
+            } else {
+                sb.append(pattern, i, j);
+                appendParameter(sb, args != null ? args[arg] : arg == 0 ? arg1 : arg2);
+                i = j + 2;
+            }
+        }
+        sb.append(pattern, i, pattern.length());
+        return t;
+    }
+
+    private static void appendParameter(StringBuilder sb, Object o) {
+        if (o == null) {
+            sb.append("null");
+        } else if (o instanceof String) {
+            sb.append((String) o);
+        } else if (o instanceof Integer || o instanceof Long || o instanceof Short || o instanceof Byte) {
+            sb.append(((Number) o).longValue());
+        } else if (o instanceof Double) {
+            sb.append(((Double) o).doubleValue());
+        } else if (o instanceof Float) {
+            sb.append(((Float) o).floatValue());
+        } else if (o instanceof Boolean) {
+            sb.append(((Boolean) o).booleanValue());
+        } else if (o instanceof Character) {
+            sb.append(((Character) o).charValue());
+        } else if (o.getClass().isArray()) {
+            // rare enough to just reuse SLF4J's array rendering
+            sb.append(MessageFormatter.format("{}", o).getMessage());
+        } else {
+            try {
+                sb.append(o.toString());
+            } catch (Throwable t) {
+                Util.report("SLF4J: Failed toString() invocation on an object of type [" + o.getClass().getName() + "]", t);
+                sb.append("[FAILED toString()]");
+            }
+        }
+    }
+}
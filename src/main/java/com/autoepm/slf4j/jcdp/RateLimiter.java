@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket limiting how many events a logger prints (jcdp.ratelimit.*).
+ * Instead of counting tokens, it tracks the time at which the bucket would be full again:
+ * an event is allowed as long as that time is less than one period ahead.
+ */
+final class RateLimiter {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    // when the bucket will be full again
+    private final AtomicLong fullAt;
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    /** Constructor.
+     *
+     * @param events number of events allowed per period, also the largest burst
+     * @param period length of the period
+     * @param unit {@link TimeUnit} of period
+     */
+    RateLimiter(long events, long period, TimeUnit unit) {
+        this.burstNanos = unit.toNanos(period);
+        this.intervalNanos = Math.max(1, burstNanos / Math.max(1, events));
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /** parse a rate such as 100/s, 600/m or 5000/h
+     *
+     * @param spec rate
+     * @return {@link RateLimiter} instance
+     * @throws IllegalArgumentException if the rate cannot be parsed
+     */
+    static RateLimiter parse(String spec) {
+        String[] parts = spec.trim().split("\\s*/\\s*");
+        if (parts.length != 2) throw new IllegalArgumentException("Invalid rate: " + spec);
+        TimeUnit unit;
+        switch (parts[1].toLowerCase()) {
+            case "s":
+                unit = TimeUnit.SECONDS;
+                break;
+            case "m":
+                unit = TimeUnit.MINUTES;
+                break;
+            case "h":
+                unit = TimeUnit.HOURS;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid rate: " + spec);
+        }
+        return new RateLimiter(Long.parseLong(parts[0]), 1, unit);
+    }
+
+    /** take a token if one is available
+     *
+     * @param now {@link System#nanoTime()}
+     * @return -1 to drop the event, otherwise how many events were dropped before it
+     */
+    int tryAcquire(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (next - now > burstNanos) {
+                dropped.incrementAndGet();
+                return -1;
+            }
+            if (fullAt.compareAndSet(current, next)) return dropped.getAndSet(0);
+        }
+    }
+
+    /** events dropped since the last one allowed, which are then no longer counted
+     *
+     * @return count, usually reported when nothing more is going to be logged
+     */
+    int takeDropped() {
+        return dropped.getAndSet(0);
+    }
+}
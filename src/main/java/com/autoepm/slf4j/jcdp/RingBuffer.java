@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free, multi-producer single-consumer queue of log events.
+ * Event fields live in preallocated slot arrays, so enqueueing allocates nothing;
+ * each slot has a sequence number telling producers and the consumer whose turn it is
+ * (see Dmitry Vyukov's bounded MPMC queue).
+ */
+final class RingBuffer {
+
+    /** receives events drained from the buffer */
+    interface Handler {
+        void onEvent(JcdpAdapter adapter, JcdpLogLevel level, String msg, Throwable t,
+                     long millis, String thread, Map<String, String> mdc);
+    }
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final JcdpAdapter[] adapters;
+    private final JcdpLogLevel[] levels;
+    private final String[] messages;
+    private final Throwable[] throwables;
+    private final long[] times;
+    private final String[] threads;
+    private final Map<String, String>[] contexts;
+    // next position producers will claim
+    private final AtomicLong tail = new AtomicLong();
+    // next position the consumer will read; only written by the consumer
+    private volatile long head;
+
+    /** Constructor.
+     *
+     * @param capacity minimum number of slots, rounded up to a power of two
+     */
+    RingBuffer(int capacity) {
+        int size = sizeFor(capacity);
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.adapters = new JcdpAdapter[size];
+        this.levels = new JcdpLogLevel[size];
+        this.messages = new String[size];
+        this.throwables = new Throwable[size];
+        this.times = new long[size];
+        this.threads = new String[size];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Map<String, String>[] contexts = new Map[size];
+        this.contexts = contexts;
+    }
+
+    /** actual number of slots allocated for a requested capacity
+     *
+     * @param capacity requested capacity
+     * @return next power of two
+     */
+    static int sizeFor(int capacity) {
+        return Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    }
+
+    /** try to enqueue an event.
+     *
+     * @return false if the buffer is full
+     */
+    boolean offer(JcdpAdapter adapter, JcdpLogLevel level, String msg, Throwable t,
+                  long millis, String thread, Map<String, String> mdc) {
+        long pos;
+        int idx;
+        while (true) {
+            pos = tail.get();
+            idx = (int) pos & mask;
+            long diff = sequences.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+            } else if (diff < 0) {
+                // slot still holds an event from the previous lap
+                return false;
+            }
+            // otherwise another producer claimed this position first, retry
+        }
+        adapters[idx] = adapter;
+        levels[idx] = level;
+        messages[idx] = msg;
+        throwables[idx] = t;
+        times[idx] = millis;
+        threads[idx] = thread;
+        contexts[idx] = mdc;
+        // publish to the consumer
+        sequences.lazySet(idx, pos + 1);
+        return true;
+    }
+
+    /** hand up to {@code limit} events to the handler. Must only be called by one thread at a time.
+     *
+     * @return number of events drained
+     */
+    int drain(Handler handler, int limit) {
+        int count = 0;
+        long pos = head;
+        while (count < limit) {
+            int idx = (int) pos & mask;
+            if (sequences.get(idx) != pos + 1) break;
+            JcdpAdapter adapter = adapters[idx];
+            JcdpLogLevel level = levels[idx];
+            String msg = messages[idx];
+            Throwable t = throwables[idx];
+            long millis = times[idx];
+            String thread = threads[idx];
+            Map<String, String> mdc = contexts[idx];
+            adapters[idx] = null;
+            levels[idx] = null;
+            messages[idx] = null;
+            throwables[idx] = null;
+            threads[idx] = null;
+            contexts[idx] = null;
+            // free the slot before printing, so producers are not held up by slow output
+            sequences.lazySet(idx, pos + mask + 1);
+            head = ++pos;
+            count++;
+            handler.onEvent(adapter, level, msg, t, millis, thread, mdc);
+        }
+        return count;
+    }
+
+    /** approximate number of queued events */
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
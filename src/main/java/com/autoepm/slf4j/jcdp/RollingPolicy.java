@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.slf4j.helpers.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * When and where a {@link FileSink} rolls its file over.
+ * <p>
+ * The pattern names archived files: {@code %d{format}} is replaced by the period
+ * (a {@link java.text.SimpleDateFormat} pattern, so {@code %d{yyyy-MM-dd}} rolls daily)
+ * and {@code %i} by an index that tells apart files rolled for size within the same period.
+ * Archives are gzipped and pruned on a background thread.
+ */
+final class RollingPolicy {
+
+    private static final Pattern DATE_TOKEN = Pattern.compile("%d\\{([^}]*)}");
+    private static final Pattern SIZE = Pattern.compile("(\\d+)\\s*(KB|MB|GB)?", Pattern.CASE_INSENSITIVE);
+    // compression never runs on a logging thread
+    private static final ExecutorService ARCHIVER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "jcdp-file-archiver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long maxSize;
+    private final String pattern;
+    private final String dateFormat;
+    private final int maxHistory;
+
+    /** Constructor.
+     *
+     * @param maxSize roll when the file reaches this many bytes, 0 for no limit
+     * @param pattern archive file name pattern, see class description
+     * @param maxHistory number of archives to keep, 0 to keep them all
+     */
+    RollingPolicy(long maxSize, String pattern, int maxHistory) {
+        this.maxSize = maxSize;
+        this.pattern = pattern.contains("%i") ? pattern : pattern + ".%i";
+        Matcher m = DATE_TOKEN.matcher(pattern);
+        this.dateFormat = m.find() ? m.group(1) : null;
+        this.maxHistory = maxHistory;
+    }
+
+    /** parse sizes such as {@code 1048576}, {@code 512KB}, {@code 10MB} or {@code 1GB}.
+     *
+     * @param size {@link String} size
+     * @return size in bytes
+     */
+    static long parseSize(String size) {
+        Matcher m = SIZE.matcher(size.trim());
+        if (!m.matches()) throw new IllegalArgumentException("Invalid size: " + size);
+        long value = Long.parseLong(m.group(1));
+        String unit = m.group(2) == null ? "" : m.group(2).toUpperCase(Locale.ROOT);
+        switch (unit) {
+            case "GB":
+                return value << 30;
+            case "MB":
+                return value << 20;
+            case "KB":
+                return value << 10;
+            default:
+                return value;
+        }
+    }
+
+    /** whether the file has grown enough to roll
+     *
+     * @param size current file size in bytes
+     * @return boolean
+     */
+    boolean isTooBig(long size) {
+        return maxSize > 0 && size >= maxSize;
+    }
+
+    /** the period a point in time belongs to. A file rolls when its period changes.
+     *
+     * @param millis epoch millis
+     * @return {@link String} period, empty if the pattern has no date
+     */
+    String periodOf(long millis) {
+        if (dateFormat == null) return "";
+        // only called when the second changes, so a new formatter each time is fine
+        return new SimpleDateFormat(dateFormat).format(new Date(millis));
+    }
+
+    /** first archive name for the period that is not taken yet, ignoring the .gz suffix
+     *
+     * @param period {@link String} period being archived
+     * @return {@link File}
+     */
+    File nextArchive(String period) {
+        for (int index = 1; ; index++) {
+            File archive = new File(DATE_TOKEN.matcher(pattern)
+                    .replaceAll(Matcher.quoteReplacement(period))
+                    .replace("%i", String.valueOf(index)));
+            if (!archive.exists() && !gzipped(archive).exists()) return archive;
+        }
+    }
+
+    /** gzip a rolled file and delete old archives, on the archiver thread.
+     *
+     * @param rolled {@link File} just renamed by the sink
+     */
+    void archive(File rolled) {
+        ARCHIVER.execute(() -> {
+            try {
+                compress(rolled);
+                prune();
+            } catch (IOException e) {
+                Util.report("Failed to archive " + rolled, e);
+            }
+        });
+    }
+
+    private static File gzipped(File file) {
+        return new File(file.getPath() + ".gz");
+    }
+
+    private void compress(File rolled) throws IOException {
+        // may already have been pruned, if files roll faster than they are compressed
+        if (!rolled.exists()) return;
+        File target = gzipped(rolled);
+        try (InputStream in = Files.newInputStream(rolled.toPath());
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(target.toPath()))) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        target.setLastModified(rolled.lastModified());
+        Files.delete(rolled.toPath());
+    }
+
+    private void prune() throws IOException {
+        if (maxHistory <= 0) return;
+        File dir = new File(pattern).getAbsoluteFile().getParentFile();
+        Pattern archives = Pattern.compile(toRegex(new File(pattern).getName()) + "(\\.gz)?");
+        File[] files = dir.listFiles((d, name) -> archives.matcher(name).matches());
+        if (files == null || files.length <= maxHistory) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = maxHistory; i < files.length; i++) {
+            Files.deleteIfExists(files[i].toPath());
+        }
+    }
+
+    private static String toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        Matcher m = Pattern.compile("%d\\{[^}]*}|%i").matcher(pattern);
+        int last = 0;
+        while (m.find()) {
+            regex.append(Pattern.quote(pattern.substring(last, m.start())));
+            regex.append(m.group().equals("%i") ? "\\d+" : ".+");
+            last = m.end();
+        }
+        return regex.append(Pattern.quote(pattern.substring(last))).toString();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Open {@link LogSink}s by canonical path, so that all loggers writing to a file share one handle.
+ * Sinks are reference-counted: {@link #acquire} opens the file or reuses the open sink,
+ * {@link #release} closes it once the last user is gone.
+ */
+final class SinkRegistry {
+
+    /** opens a sink for a canonical path */
+    interface Opener<T extends LogSink> {
+        T open(String path) throws IOException;
+    }
+
+    private static final class Entry {
+        final LogSink sink;
+        int references = 0;
+
+        Entry(LogSink sink) {
+            this.sink = sink;
+        }
+    }
+
+    // opening a file is blocking I/O, so a ReentrantLock rather than a monitor
+    private static final ReentrantLock LOCK = new ReentrantLock();
+    // guarded by LOCK
+    private static final Map<String, Entry> SINKS = new HashMap<>();
+
+    private SinkRegistry() {
+    }
+
+    /** get the sink for a file, opening it if nobody else has.
+     *
+     * @param file {@link File} to write to
+     * @param type expected sink class
+     * @param opener {@link Opener} used if the file is not open yet
+     * @return shared sink; call {@link #release} when done with it
+     * @throws IOException if the file cannot be opened, or is already open as a different kind of sink
+     */
+    static <T extends LogSink> T acquire(File file, Class<T> type, Opener<T> opener) throws IOException {
+        String path = file.getCanonicalPath();
+        LOCK.lock();
+        try {
+            Entry entry = SINKS.get(path);
+            if (entry == null) {
+                entry = new Entry(opener.open(path));
+                SINKS.put(path, entry);
+            } else if (!type.isInstance(entry.sink)) {
+                throw new IOException(path + " is already open as " + entry.sink.getClass().getSimpleName());
+            }
+            entry.references++;
+            return type.cast(entry.sink);
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /** bytes written by each open sink
+     *
+     * @return map of canonical path to bytes written
+     */
+    static Map<String, Long> bytesWritten() {
+        Map<String, Long> bytes = new HashMap<>();
+        LOCK.lock();
+        try {
+            for (Map.Entry<String, Entry> entry : SINKS.entrySet()) {
+                bytes.put(entry.getKey(), entry.getValue().sink.getBytesWritten());
+            }
+        } finally {
+            LOCK.unlock();
+        }
+        return bytes;
+    }
+
+    /** give back a reference obtained from {@link #acquire}; the last one closes the sink.
+     *
+     * @param sink {@link LogSink} to release
+     */
+    static void release(LogSink sink) {
+        LOCK.lock();
+        try {
+            Entry entry = SINKS.get(sink.getPath());
+            if (entry == null || entry.sink != sink || --entry.references > 0) return;
+            SINKS.remove(sink.getPath());
+        } finally {
+            LOCK.unlock();
+        }
+        sink.close();
+    }
+}
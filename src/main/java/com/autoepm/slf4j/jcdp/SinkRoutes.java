@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Extra destinations from jcdp.sink.&lt;NAME&gt;.* properties, each with its own threshold and format.
+ * Routes are compiled per logger into an array of sinks for each level, so writing an event
+ * walks one array without checking levels or logger names.
+ */
+final class SinkRoutes {
+
+    /** one named destination */
+    static final class Route {
+        final LogSink sink;
+        final boolean json;
+        // most verbose level written to the sink
+        final JcdpLogLevel level;
+        // logger name prefixes, or null for all loggers
+        final String[] loggers;
+
+        Route(LogSink sink, boolean json, JcdpLogLevel level, String[] loggers) {
+            this.sink = sink;
+            this.json = json;
+            this.level = level;
+            this.loggers = loggers;
+        }
+
+        boolean matches(String loggerName) {
+            if (loggers == null) return true;
+            for (String prefix : loggers) {
+                if (loggerName.equals(prefix)
+                        || (loggerName.startsWith(prefix) && loggerName.charAt(prefix.length()) == '.')) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** routes by level number, for loggers without any */
+    static final Route[][] NO_ROUTES = new Route[JcdpLogLevel.TRACE.getLevel() + 1][0];
+    static final SinkRoutes NONE = new SinkRoutes(Collections.emptyList());
+
+    private final List<Route> routes;
+
+    /** constructor
+     *
+     * @param routes {@link Route} instances, in configuration order
+     */
+    SinkRoutes(List<Route> routes) {
+        this.routes = routes;
+    }
+
+    /** routes for one logger
+     *
+     * @param loggerName logger name
+     * @return {@link Route} arrays indexed by {@link JcdpLogLevel#getLevel()}, never null
+     */
+    Route[][] compile(String loggerName) {
+        if (routes.isEmpty()) return NO_ROUTES;
+        List<Route> matching = new ArrayList<>();
+        for (Route route : routes) {
+            if (route.matches(loggerName)) matching.add(route);
+        }
+        if (matching.isEmpty()) return NO_ROUTES;
+        Route[][] compiled = new Route[NO_ROUTES.length][];
+        compiled[0] = NO_ROUTES[0];
+        for (int level = 1; level < compiled.length; level++) {
+            List<Route> atLevel = new ArrayList<>();
+            for (Route route : matching) {
+                if (level <= route.level.getLevel()) atLevel.add(route);
+            }
+            compiled[level] = atLevel.toArray(new Route[0]);
+        }
+        return compiled;
+    }
+
+    /** sinks opened for these routes, to release when they are replaced
+     *
+     * @return {@link LogSink} instances, once per route: a file shared by two routes is listed twice
+     */
+    List<LogSink> getSinks() {
+        List<LogSink> sinks = new ArrayList<>();
+        for (Route route : routes) {
+            sinks.add(route.sink);
+        }
+        return sinks;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drops repeats of the same event within a time window (jcdp.suppress.*).
+ * Events are considered the same when they share format string, level and exception type,
+ * whatever their arguments. The first one of each window is logged, along with
+ * how many were suppressed in the previous window. If no such event comes, the count
+ * is handed to {@link #reportExpired} once the window is over.
+ * At most {@code maxEntries} events are tracked; beyond that, new ones are never suppressed.
+ */
+final class Suppressor {
+
+    /** receives counts of suppressed events that were not reported with a logged event */
+    interface Reporter {
+        void suppressed(JcdpLogLevel level, String format, int count);
+    }
+
+    /** one tracked event; variants of the same format string are chained */
+    private static final class Entry {
+        final JcdpLogLevel level;
+        final Class<?> type;
+        final Entry next;
+        final AtomicLong windowStart;
+        final AtomicInteger suppressed = new AtomicInteger();
+
+        Entry(JcdpLogLevel level, Class<?> type, Entry next, long now) {
+            this.level = level;
+            this.type = type;
+            this.next = next;
+            this.windowStart = new AtomicLong(now);
+        }
+    }
+
+    private final long windowNanos;
+    private final int maxEntries;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // whether some entry has a count to report, and from when; both only hints, checked again when reporting
+    private volatile boolean pending;
+    private volatile long nextReport;
+
+    /** Constructor.
+     *
+     * @param windowMillis how long repeats are suppressed after an event is logged
+     * @param maxEntries maximum number of distinct events tracked
+     */
+    Suppressor(long windowMillis, int maxEntries) {
+        this.windowNanos = windowMillis * 1_000_000L;
+        this.maxEntries = maxEntries;
+    }
+
+    /** decide whether an event should be logged
+     *
+     * @param level {@link JcdpLogLevel}
+     * @param format message format, not null
+     * @param t {@link Throwable} exception, can be null
+     * @param now {@link System#nanoTime()}
+     * @return -1 to drop the event, otherwise how many similar events were dropped before it
+     */
+    int admit(JcdpLogLevel level, String format, Throwable t, long now) {
+        Class<?> type = t == null ? null : t.getClass();
+        Entry entry = find(entries.get(format), level, type);
+        if (entry == null) {
+            if (entries.size() >= maxEntries && !purge(now)) return 0;
+            entries.compute(format, (key, head) -> find(head, level, type) != null
+                    ? head : new Entry(level, type, head, now));
+            return 0;
+        }
+        long start = entry.windowStart.get();
+        if (now - start >= windowNanos && entry.windowStart.compareAndSet(start, now)) {
+            return entry.suppressed.getAndSet(0);
+        }
+        entry.suppressed.incrementAndGet();
+        reportAt(start + windowNanos);
+        return -1;
+    }
+
+    /** give back a count returned by {@link #admit} for an event that was dropped after all,
+     * e.g. by a rate limit, so that it is reported later rather than lost
+     *
+     * @param level {@link JcdpLogLevel}
+     * @param format message format, not null
+     * @param t {@link Throwable} exception, can be null
+     * @param count count returned by {@link #admit}
+     */
+    void restore(JcdpLogLevel level, String format, Throwable t, int count) {
+        Entry entry = find(entries.get(format), level, t == null ? null : t.getClass());
+        if (entry == null || count <= 0) return;
+        entry.suppressed.addAndGet(count);
+        reportAt(entry.windowStart.get() + windowNanos);
+    }
+
+    /** whether {@link #reportExpired} has anything to do
+     *
+     * @param now {@link System#nanoTime()}
+     * @return boolean
+     */
+    boolean hasExpired(long now) {
+        return pending && now - nextReport >= 0;
+    }
+
+    /** report the counts of events whose window is over, which would otherwise wait for the next repeat
+     *
+     * @param now {@link System#nanoTime()}, or {@link Long#MAX_VALUE} to report every count
+     * @param reporter {@link Reporter} to hand the counts to
+     */
+    void reportExpired(long now, Reporter reporter) {
+        pending = false;
+        boolean all = now == Long.MAX_VALUE;
+        for (Map.Entry<String, Entry> head : entries.entrySet()) {
+            for (Entry entry = head.getValue(); entry != null; entry = entry.next) {
+                if (entry.suppressed.get() == 0) continue;
+                long end = entry.windowStart.get() + windowNanos;
+                if (!all && now - end < 0) {
+                    reportAt(end);
+                    continue;
+                }
+                int count = entry.suppressed.getAndSet(0);
+                if (count > 0) reporter.suppressed(entry.level, head.getKey(), count);
+            }
+        }
+    }
+
+    private void reportAt(long end) {
+        if (!pending || end - nextReport < 0) {
+            nextReport = end;
+            pending = true;
+        }
+    }
+
+    private static Entry find(Entry head, JcdpLogLevel level, Class<?> type) {
+        for (Entry entry = head; entry != null; entry = entry.next) {
+            if (entry.level == level && entry.type == type) return entry;
+        }
+        return null;
+    }
+
+    /** forget format strings whose events were last logged over a window ago and suppressed nothing since
+     *
+     * @return true if room was made
+     */
+    private boolean purge(long now) {
+        entries.values().removeIf(head -> {
+            for (Entry entry = head; entry != null; entry = entry.next) {
+                if (now - entry.windowStart.get() < windowNanos || entry.suppressed.get() > 0) return false;
+            }
+            return true;
+        });
+        return entries.size() < maxEntries;
+    }
+}
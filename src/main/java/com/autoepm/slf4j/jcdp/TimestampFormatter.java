@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Renders event timestamps as ASCII, selected by jcdp.timestamp.format:
+ * <ul>
+ *     <li>jcdp (default): dd/MM/yyyy HH:mm:ss, as printed by JCDP</li>
+ *     <li>iso8601: yyyy-MM-dd'T'HH:mm:ss.SSS with the local offset</li>
+ *     <li>epoch: milliseconds since the epoch</li>
+ * </ul>
+ * The text of the current second is formatted once and shared by all threads;
+ * within that second, only the millisecond digits are patched in. Threads that
+ * race on a new second may each format it, but never block.
+ */
+final class TimestampFormatter {
+
+    enum Style { JCDP, ISO8601, EPOCH }
+
+    static final TimestampFormatter DEFAULT = new TimestampFormatter(Style.JCDP, ZoneId.systemDefault());
+    private static final TimestampFormatter ISO8601 = new TimestampFormatter(Style.ISO8601, ZoneId.systemDefault());
+    private static final TimestampFormatter EPOCH = new TimestampFormatter(Style.EPOCH, ZoneId.systemDefault());
+
+    // longest possible output: negative epoch millis
+    private static final int EPOCH_MAX_LENGTH = 20;
+
+    /** rendered text of one second; never modified once published */
+    private static final class Second {
+        final long second;
+        final byte[] bytes;
+
+        Second(long second, byte[] bytes) {
+            this.second = second;
+            this.bytes = bytes;
+        }
+    }
+
+    private final Style style;
+    private final DateTimeFormatter formatter;
+    // offset of the millisecond digits in the rendered second, or -1 if there are none
+    private final int millisOffset;
+    private volatile Second cached = new Second(Long.MIN_VALUE, new byte[0]);
+
+    /** Constructor.
+     *
+     * @param style {@link Style} to render
+     * @param zone {@link ZoneId} dates are rendered in
+     */
+    TimestampFormatter(Style style, ZoneId zone) {
+        this.style = style;
+        switch (style) {
+            case ISO8601:
+                // milliseconds are rendered as a placeholder and patched on every call
+                this.formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'.000'XXX").withZone(zone);
+                this.millisOffset = "yyyy-MM-ddTHH:mm:ss.".length();
+                break;
+            case EPOCH:
+                this.formatter = null;
+                this.millisOffset = -1;
+                break;
+            default:
+                this.formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss").withZone(zone);
+                this.millisOffset = -1;
+        }
+    }
+
+    /** shared formatter for a jcdp.timestamp.format value, in the default time zone
+     *
+     * @param name jcdp, iso8601 or epoch, case-insensitive
+     * @return {@link TimestampFormatter} instance
+     */
+    static TimestampFormatter of(String name) {
+        switch (Style.valueOf(name.trim().toUpperCase())) {
+            case ISO8601:
+                return ISO8601;
+            case EPOCH:
+                return EPOCH;
+            default:
+                return DEFAULT;
+        }
+    }
+
+    Style getStyle() {
+        return style;
+    }
+
+    /** @return maximum number of bytes {@link #format(long, ByteBuffer)} writes */
+    int maxLength() {
+        return style == Style.EPOCH ? EPOCH_MAX_LENGTH : 40;
+    }
+
+    /** write a timestamp at the buffer's position, which must have {@link #maxLength()} bytes remaining
+     *
+     * @param millis time to render
+     * @param out {@link ByteBuffer} to write to
+     */
+    void format(long millis, ByteBuffer out) {
+        if (style == Style.EPOCH) {
+            int start = out.position();
+            out.position(start + appendEpoch(millis, out, start));
+            return;
+        }
+        byte[] second = secondOf(millis);
+        int start = out.position();
+        out.put(second);
+        if (millisOffset >= 0) {
+            int ms = (int) Math.floorMod(millis, 1000L);
+            out.put(start + millisOffset, (byte) ('0' + ms / 100));
+            out.put(start + millisOffset + 1, (byte) ('0' + ms / 10 % 10));
+            out.put(start + millisOffset + 2, (byte) ('0' + ms % 10));
+        }
+    }
+
+    /** append a timestamp to text
+     *
+     * @param millis time to render
+     * @param sb {@link StringBuilder} to append to
+     */
+    void format(long millis, StringBuilder sb) {
+        if (style == Style.EPOCH) {
+            sb.append(millis);
+            return;
+        }
+        byte[] second = secondOf(millis);
+        int ms = (int) Math.floorMod(millis, 1000L);
+        for (int i = 0; i < second.length; i++) {
+            if (i == millisOffset) {
+                sb.append((char) ('0' + ms / 100)).append((char) ('0' + ms / 10 % 10)).append((char) ('0' + ms % 10));
+                i += 2;
+            } else {
+                sb.append((char) second[i]);
+            }
+        }
+    }
+
+    private byte[] secondOf(long millis) {
+        long second = Math.floorDiv(millis, 1000L);
+        Second current = cached;
+        if (current.second != second) {
+            current = new Second(second,
+                    formatter.format(Instant.ofEpochSecond(second)).getBytes(StandardCharsets.US_ASCII));
+            cached = current;
+        }
+        return current.bytes;
+    }
+
+    /** write the decimal digits of a long at an absolute position, without allocating
+     *
+     * @return number of bytes written
+     */
+    private static int appendEpoch(long value, ByteBuffer out, int start) {
+        if (value == Long.MIN_VALUE) {
+            byte[] min = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < min.length; i++) out.put(start + i, min[i]);
+            return min.length;
+        }
+        int length = 0;
+        if (value < 0) {
+            out.put(start + length++, (byte) '-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) digits++;
+        for (int i = digits - 1; i >= 0; i--) {
+            out.put(start + length + i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        return length + digits;
+    }
+}
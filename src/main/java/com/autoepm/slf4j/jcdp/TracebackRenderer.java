@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Renders a message and its exception into a single multi-line string,
+ * so that a traceback is printed with one write per destination
+ * and lines from other threads cannot land in the middle of it.
+ * <p>
+ * Frames can be trimmed: at most {@code maxFrames} per exception, runs of frames from
+ * {@code foldPrefixes} packages collapsed into one line, and frames a cause shares with
+ * the exception that wraps it replaced by "... N more", as {@link Throwable#printStackTrace()} does.
+ * Rendered frames are cached by stack fingerprint, so an exception thrown over and over
+ * from the same place costs a hash and a comparison rather than a String per frame.
+ */
+final class TracebackRenderer {
+
+    private static final String NEWLINE = System.lineSeparator();
+    private static final String INDENT = "\t\t";
+    private static final StackTraceElement[] NO_FRAMES = new StackTraceElement[0];
+    // buffers that grew past this are not kept around after use
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+    /** all frames, cache of 256 stacks */
+    static final TracebackRenderer DEFAULT = new TracebackRenderer(0, new String[0], 256);
+
+    /** rendered frames of one stack */
+    private static final class Entry {
+        final StackTraceElement[] trace;
+        final int unique;
+        final int hash;
+        final String rendered;
+
+        Entry(StackTraceElement[] trace, int unique, int hash, String rendered) {
+            this.trace = trace;
+            this.unique = unique;
+            this.hash = hash;
+            this.rendered = rendered;
+        }
+
+        boolean matches(StackTraceElement[] other, int unique, int hash) {
+            if (this.hash != hash || this.unique != unique || trace.length != other.length) return false;
+            for (int i = 0; i < unique; i++) {
+                if (!trace[i].equals(other[i])) return false;
+            }
+            return true;
+        }
+    }
+
+    private final int maxFrames;
+    private final String[] foldPrefixes;
+    // direct-mapped: a stack evicts whatever else hashed to its slot
+    private final AtomicReferenceArray<Entry> cache;
+    private final int mask;
+
+    /** Constructor.
+     *
+     * @param maxFrames frames printed per exception, 0 for all
+     * @param foldPrefixes class name prefixes of frames to fold, e.g. "sun.reflect."
+     * @param cacheSize number of stacks to cache, rounded up to a power of two; 0 disables the cache
+     */
+    TracebackRenderer(int maxFrames, String[] foldPrefixes, int cacheSize) {
+        this.maxFrames = maxFrames;
+        this.foldPrefixes = foldPrefixes;
+        int size = cacheSize <= 0 ? 0 : Integer.highestOneBit(Math.max(1, cacheSize - 1)) << 1;
+        this.cache = size == 0 ? null : new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /** render message, exception, frames, causes and suppressed exceptions.
+     *
+     * @param msg {@link String} message
+     * @param t {@link Throwable} exception
+     * @return rendered traceback, without trailing newline
+     */
+    String render(CharSequence msg, Throwable t) {
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        sb.append(msg).append(NEWLINE);
+        appendThrowable(sb, t, NO_FRAMES, "", Collections.newSetFromMap(new IdentityHashMap<>()));
+        String result = sb.toString();
+        if (sb.capacity() > MAX_RETAINED_CAPACITY || VirtualThreads.isCurrentVirtual()) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    private void appendThrowable(StringBuilder sb, Throwable t, StackTraceElement[] enclosing,
+                                 String caption, Set<Throwable> seen) {
+        if (!seen.add(t)) {
+            sb.append(NEWLINE).append(INDENT).append("[CIRCULAR REFERENCE: ").append(t).append(']');
+            return;
+        }
+        if (caption.isEmpty()) {
+            sb.append(INDENT).append(t);
+        } else {
+            sb.append(NEWLINE).append(INDENT).append(caption).append(t);
+        }
+        StackTraceElement[] trace = t.getStackTrace();
+        appendFrames(sb, trace, enclosing);
+        for (Throwable suppressed : t.getSuppressed()) {
+            appendThrowable(sb, suppressed, trace, "Suppressed: ", seen);
+        }
+        Throwable cause = t.getCause();
+        if (cause != null) {
+            appendThrowable(sb, cause, trace, "Caused by: ", seen);
+        }
+    }
+
+    /** append frames not shared with the enclosing trace, from cache if possible
+     *
+     * @param sb {@link StringBuilder} to append to
+     * @param trace frames of the exception
+     * @param enclosing frames of the exception wrapping it, empty for the outermost one
+     */
+    private void appendFrames(StringBuilder sb, StackTraceElement[] trace, StackTraceElement[] enclosing) {
+        int unique = trace.length;
+        for (int e = enclosing.length - 1; unique > 0 && e >= 0 && trace[unique - 1].equals(enclosing[e]); e--) {
+            unique--;
+        }
+        if (cache == null) {
+            renderFrames(sb, trace, unique);
+            return;
+        }
+        int hash = trace.length;
+        for (int i = 0; i < unique; i++) {
+            hash = 31 * hash + trace[i].hashCode();
+        }
+        int slot = (hash ^ hash >>> 16) & mask;
+        Entry entry = cache.get(slot);
+        if (entry != null && entry.matches(trace, unique, hash)) {
+            sb.append(entry.rendered);
+            return;
+        }
+        int from = sb.length();
+        renderFrames(sb, trace, unique);
+        cache.set(slot, new Entry(trace, unique, hash, sb.substring(from)));
+    }
+
+    private void renderFrames(StringBuilder sb, StackTraceElement[] trace, int unique) {
+        int limit = maxFrames > 0 ? Math.min(unique, maxFrames) : unique;
+        int i = 0;
+        for (int printed = 0; i < unique && printed < limit; printed++) {
+            int folded = 0;
+            while (i + folded < unique && isFolded(trace[i + folded])) {
+                folded++;
+            }
+            if (folded > 1) {
+                sb.append(NEWLINE).append(INDENT).append("... ").append(folded).append(" frames folded");
+                i += folded;
+            } else {
+                sb.append(NEWLINE).append(INDENT).append(trace[i++]);
+            }
+        }
+        int more = trace.length - i;
+        if (more > 0) {
+            sb.append(NEWLINE).append(INDENT).append("... ").append(more).append(" more");
+        }
+    }
+
+    private boolean isFolded(StackTraceElement frame) {
+        String className = frame.getClassName();
+        for (String prefix : foldPrefixes) {
+            if (className.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+}
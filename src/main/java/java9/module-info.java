@@ -2,5 +2,8 @@
 module com.autoepm.slf4j.jcdp {
     requires org.slf4j;
     requires JCDP;
+    requires java.management;
+    // JcdpLogger API, and LoggingControlMXBean for the platform MBean server
+    exports com.autoepm.slf4j.jcdp;
     provides org.slf4j.spi.SLF4JServiceProvider with com.autoepm.slf4j.jcdp.JcdpProvider;
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class FileSinkTest {
+
+    private File tempLog;
+    private FileSink sink;
+
+    @Before
+    public void setUp() throws Exception {
+        tempLog = File.createTempFile("test_", "_FileSinkTest");
+        sink = FileSink.acquire(tempLog);
+        sink.configure(null, FileSink.DEFAULT_BUFFER_SIZE, 0, JcdpLogLevel.ERROR, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sink.release();
+        tempLog.delete();
+    }
+
+    @Test
+    public void sameFileSameSink() throws IOException {
+        FileSink other = FileSink.acquire(new File(tempLog.getParentFile(), "./" + tempLog.getName()));
+        assertSame(sink, other);
+        other.release();
+    }
+
+    @Test
+    public void buffersUntilFlushLevel() throws IOException {
+        sink.write("info line", JcdpLogLevel.INFO);
+        assertEquals(0, tempLog.length());
+
+        sink.write("error line", JcdpLogLevel.ERROR);
+        assertEquals(Arrays.asList("info line", "error line"), Files.readAllLines(tempLog.toPath()));
+    }
+
+    @Test
+    public void writesWhenBufferIsFull() throws IOException {
+        sink.configure(null, 1024, 0, JcdpLogLevel.ERROR, null);
+        String line = String.join("", Collections.nCopies(100, "x"));
+        for (int i = 0; i < 20; i++) {
+            sink.write(line, JcdpLogLevel.DEBUG);
+        }
+        assertTrue(tempLog.length() >= 1024);
+
+        sink.flush();
+        assertEquals(20, Files.readAllLines(tempLog.toPath()).size());
+    }
+
+    @Test
+    public void rollsOnSizeAndKeepsHistory() throws Exception {
+        String pattern = tempLog.getPath() + ".%d{yyyy-MM-dd}.%i";
+        RollingPolicy rolling = new RollingPolicy(RollingPolicy.parseSize("2KB"), pattern, 2);
+        sink.configure(null, 1024, 0, JcdpLogLevel.ERROR, rolling);
+        String line = String.join("", Collections.nCopies(99, "x"));
+        for (int i = 0; i < 100; i++) {
+            sink.write(line, JcdpLogLevel.INFO);
+        }
+        sink.flush();
+        assertTrue(tempLog.length() < 2048);
+
+        // compression and pruning happen in the background
+        File dir = tempLog.getParentFile();
+        String prefix = tempLog.getName() + ".";
+        long deadline = System.currentTimeMillis() + 10000;
+        File[] archives;
+        do {
+            Thread.sleep(50);
+            archives = dir.listFiles((d, name) -> name.startsWith(prefix));
+        } while ((archives.length != 2 || !archives[0].getName().endsWith(".gz") || !archives[1].getName().endsWith(".gz"))
+                && System.currentTimeMillis() < deadline);
+        try {
+            assertEquals(2, archives.length);
+            for (File archive : archives) {
+                assertTrue(archive.getName().endsWith(".gz"));
+            }
+        } finally {
+            for (File archive : archives) {
+                archive.delete();
+            }
+        }
+    }
+
+    @Test
+    public void parseSize() {
+        assertEquals(100, RollingPolicy.parseSize("100"));
+        assertEquals(512 * 1024, RollingPolicy.parseSize("512KB"));
+        assertEquals(10L * 1024 * 1024, RollingPolicy.parseSize("10mb"));
+        assertEquals(1L << 30, RollingPolicy.parseSize("1 GB"));
+    }
+}
@@ -26,16 +26,37 @@ package com.autoepm.slf4j.jcdp;
 
 import com.diogonunes.jcdp.color.api.Ansi;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -80,6 +101,32 @@ public class JcdpAdapterFactoryTest {
 
     @After
     public void tearDown() throws Exception {
+        System.clearProperty("jcdp.async.enabled");
+        System.clearProperty("jcdp.async.capacity");
+        System.clearProperty("jcdp.color");
+        System.clearProperty("jcdp.level.com.acme");
+        System.clearProperty("jcdp.level.com.acme.payments");
+        System.clearProperty(JcdpConfig.CONFIG_FILE_PROPERTY);
+        System.clearProperty("jcdp.mdc.keys");
+        System.clearProperty("jcdp.gcfree");
+        System.clearProperty("jcdp.marker.SQL.enabled");
+        System.clearProperty("jcdp.marker.AUDIT.file");
+        System.clearProperty("jcdp.marker.SECURITY.file");
+        System.clearProperty("jcdp.file.format");
+        System.clearProperty("jcdp.suppress.enabled");
+        System.clearProperty("jcdp.suppress.window.ms");
+        System.clearProperty("jcdp.ratelimit.com.acme");
+        System.clearProperty("jcdp.metrics.enabled");
+        System.clearProperty("jcdp.console.mode");
+        System.clearProperty("jcdp.console.stderr.level");
+        System.clearProperty("jcdp.sink.errors.path");
+        System.clearProperty("jcdp.sink.errors.level");
+        System.clearProperty("jcdp.sink.warnings.path");
+        System.clearProperty("jcdp.sink.warnings.level");
+        System.clearProperty("jcdp.sink.warnings.loggers");
+        System.clearProperty("jcdp.sink.audit.path");
+        System.clearProperty("jcdp.sink.audit.loggers");
+        System.clearProperty("jcdp.sink.audit.format");
         //tempLog.delete();
     }
 
@@ -92,9 +139,10 @@ public class JcdpAdapterFactoryTest {
         JcdpAdapterFactory factory = new JcdpAdapterFactory();
         JcdpAdapter logger = (JcdpAdapter) factory.getLogger("Something");
 
+        // the console is at WARN, but the file takes DEBUG
         assertFalse(logger.isTraceEnabled());
-        assertFalse(logger.isDebugEnabled());
-        assertFalse(logger.isInfoEnabled());
+        assertTrue(logger.isDebugEnabled());
+        assertTrue(logger.isInfoEnabled());
         assertTrue(logger.isWarnEnabled());
         assertTrue(logger.isErrorEnabled());
         assertTrue(logger.isFileEnabled());
@@ -108,6 +156,715 @@ public class JcdpAdapterFactoryTest {
 
     }
 
+    /**
+     * color codes are pre-rendered per level, and dropped entirely when colors are off
+     */
+    @Test
+    public void colorCodes() {
+        System.setProperty("jcdp.color", "always");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        JcdpAdapter logger = (JcdpAdapter) factory.getLogger("Something");
+        assertEquals(expectedERRORFormat, new String(logger.getColorCode(JcdpLogLevel.ERROR)));
+        assertEquals(expectedTRACEFormat, new String(logger.getColorCode(JcdpLogLevel.TRACE)));
+
+        System.setProperty("jcdp.color", "never");
+        factory.reconfigure();
+        assertEquals(0, logger.getColorCode(JcdpLogLevel.ERROR).length);
+        // printers still carry the configured colors
+        assertEquals(expectedERRORFormat, logger.getPrinter(JcdpLogLevel.ERROR).generateCode());
+    }
+
+    /**
+     * WARN and above can go to stderr; direct mode bypasses System.out
+     */
+    @Test
+    public void console() {
+        String nl = System.lineSeparator();
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        System.setProperty("jcdp.level", "INFO");
+        System.setProperty("jcdp.color", "never");
+        System.setProperty("jcdp.console.stderr.level", "WARN");
+        System.setOut(new PrintStream(out, true));
+        System.setErr(new PrintStream(err, true));
+        try {
+            JcdpAdapterFactory factory = new JcdpAdapterFactory();
+            Logger logger = factory.getLogger("Something");
+            logger.info("to stdout");
+            logger.warn("to stderr");
+            System.setProperty("jcdp.console.mode", "direct");
+            factory.reconfigure();
+            logger.info("straight to stdout");
+            factory.shutdown();
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+
+        assertEquals("to stdout" + nl, out.toString());
+        assertEquals("to stderr" + nl, err.toString());
+    }
+
+    /**
+     * the same name must always return the same logger
+     */
+    @Test
+    public void getLoggerIsCached() {
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+
+        assertSame(logger, factory.getLogger("Something"));
+        assertNotSame(logger, factory.getLogger("Something else"));
+        assertEquals("Something", logger.getName());
+    }
+
+    /**
+     * loggers created while the configuration changes end up with the new one
+     */
+    @Test
+    public void getLoggerDuringReconfigure() throws Exception {
+        File otherLog = File.createTempFile("other_", "_JcdpAdapterFactoryTest");
+        otherLog.deleteOnExit();
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Logger>> loggers = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final String name = "com.acme.Logger" + i;
+            loggers.add(executor.submit(() -> factory.getLogger(name)));
+        }
+        System.setProperty("jcdp.file.path", otherLog.getAbsolutePath());
+        factory.reconfigure();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (Future<Logger> logger : loggers) {
+            assertEquals(otherLog.getCanonicalPath(), ((JcdpAdapter) logger.get()).getFileSink().getPath());
+        }
+        assertFalse(SinkRegistry.bytesWritten().containsKey(tempLog.getCanonicalPath()));
+        factory.shutdown();
+    }
+
+    /**
+     * cached loggers must pick up property changes on reconfigure
+     */
+    @Test
+    public void reconfigure() {
+        System.setProperty("jcdp.file.enabled", "false");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+        assertFalse(logger.isDebugEnabled());
+
+        System.setProperty("jcdp.level", "DEBUG");
+        factory.reconfigure();
+
+        assertSame(logger, factory.getLogger("Something"));
+        assertTrue(logger.isDebugEnabled());
+        assertFalse(logger.isTraceEnabled());
+    }
+
+    /**
+     * an invalid configuration is rejected as a whole and the previous one keeps working
+     */
+    @Test
+    public void invalidReconfigure() throws IOException {
+        File errorLog = new File(tempLog.getPath() + ".errors");
+        errorLog.deleteOnExit();
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("com.acme.Thing");
+
+        System.setProperty("jcdp.async.enabled", "true");
+        System.setProperty("jcdp.sink.errors.path", errorLog.getAbsolutePath());
+        System.setProperty("jcdp.level.com.acme", "VERBOSE");
+        try {
+            factory.reconfigure();
+            fail("VERBOSE is not a level");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        assertNull(factory.getCurrentAsyncWriter());
+        assertFalse(errorLog.exists());
+        assertEquals(JcdpLogLevel.WARN, ((JcdpAdapter) factory.getLogger("com.acme.Other")).getLevel());
+        logger.warn("still here");
+        factory.shutdown();
+        assertEquals(Collections.singletonList("still here"), Files.readAllLines(tempLog.toPath()));
+    }
+
+    /**
+     * the most specific jcdp.level.&lt;prefix&gt; wins, and reconfigure updates existing loggers
+     */
+    @Test
+    public void levelHierarchy() {
+        System.setProperty("jcdp.file.enabled", "false");
+        System.setProperty("jcdp.level.com.acme", "INFO");
+        System.setProperty("jcdp.level.com.acme.payments", "TRACE");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger payments = factory.getLogger("com.acme.payments.Gateway");
+        Logger orders = factory.getLogger("com.acme.orders.Cart");
+        Logger other = factory.getLogger("org.other.Thing");
+        // a prefix must match whole name segments
+        Logger lookalike = factory.getLogger("com.acmeish.Thing");
+
+        assertTrue(payments.isTraceEnabled());
+        assertTrue(orders.isInfoEnabled());
+        assertFalse(orders.isDebugEnabled());
+        assertFalse(other.isInfoEnabled());
+        assertFalse(lookalike.isInfoEnabled());
+
+        System.clearProperty("jcdp.level.com.acme.payments");
+        factory.reconfigure();
+        assertFalse(payments.isDebugEnabled());
+        assertTrue(payments.isInfoEnabled());
+    }
+
+    /**
+     * runtime level changes apply to existing loggers, over JMX too
+     */
+    @Test
+    public void setLevel() throws Exception {
+        System.setProperty("jcdp.file.enabled", "false");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger payments = factory.getLogger("com.acme.payments.Gateway");
+        Logger other = factory.getLogger("org.other.Thing");
+
+        factory.setLevel("com.acme", JcdpLogLevel.DEBUG);
+        assertTrue(payments.isDebugEnabled());
+        assertFalse(other.isDebugEnabled());
+        // survives a reconfigure
+        factory.reconfigure();
+        assertTrue(payments.isDebugEnabled());
+
+        LoggingControl.register(factory);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(LoggingControl.OBJECT_NAME);
+        server.invoke(name, "setLevel", new Object[]{"ROOT", "error"},
+                new String[]{String.class.getName(), String.class.getName()});
+        assertFalse(other.isWarnEnabled());
+        // the more specific setting still wins
+        assertTrue(payments.isDebugEnabled());
+        assertEquals("ERROR", server.invoke(name, "getLevel", new Object[]{"org.other.Thing"},
+                new String[]{String.class.getName()}));
+
+        factory.setLevel("com.acme", null);
+        factory.setLevel(Logger.ROOT_LOGGER_NAME, null);
+        assertFalse(payments.isDebugEnabled());
+        assertTrue(other.isWarnEnabled());
+    }
+
+    /**
+     * settings come from the config file, system properties win, and edits are picked up
+     */
+    @Test
+    public void configFile() throws Exception {
+        File configFile = File.createTempFile("jcdp_", ".properties");
+        configFile.deleteOnExit();
+        Files.write(configFile.toPath(), Arrays.asList("jcdp.level.com.acme=DEBUG", "jcdp.level=TRACE"));
+        System.setProperty(JcdpConfig.CONFIG_FILE_PROPERTY, configFile.getAbsolutePath());
+        System.setProperty("jcdp.file.enabled", "false");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger acme = factory.getLogger("com.acme.Thing");
+        Logger other = factory.getLogger("org.other.Thing");
+        assertTrue(acme.isDebugEnabled());
+        assertFalse(acme.isTraceEnabled());
+        // jcdp.level=WARN from system properties overrides the file
+        assertFalse(other.isInfoEnabled());
+
+        factory.watchConfig();
+        try {
+            Files.write(configFile.toPath(), Arrays.asList("jcdp.level.com.acme=TRACE"));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!acme.isTraceEnabled() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(acme.isTraceEnabled());
+        } finally {
+            factory.shutdown();
+        }
+    }
+
+    /**
+     * settings read outside of loggers come from the config file too
+     */
+    @Test
+    public void configFileGlobals() throws Exception {
+        File configFile = File.createTempFile("jcdp_", ".properties");
+        configFile.deleteOnExit();
+        Files.write(configFile.toPath(), Arrays.asList("jcdp.jmx.enabled=false", "jcdp.timestamp.enabled=true"));
+        System.setProperty(JcdpConfig.CONFIG_FILE_PROPERTY, configFile.getAbsolutePath());
+        System.clearProperty("jcdp.timestamp.enabled");
+
+        assertFalse(new JcdpAdapterFactory().isJmxEnabled());
+        assertTrue(JcdpAdapterFactory.isTsEnabled());
+    }
+
+    /**
+     * loggers writing to the same path must share one open file
+     */
+    @Test
+    public void fileSinkIsShared() throws IOException {
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        JcdpAdapter first = (JcdpAdapter) factory.getLogger("First");
+        JcdpAdapter second = (JcdpAdapter) factory.getLogger("Second");
+        assertNotNull(first.getFileSink());
+        assertSame(first.getFileSink(), second.getFileSink());
+
+        first.warn("from first");
+        second.warn("from second");
+        factory.shutdown();
+
+        assertNull(first.getFileSink());
+        assertFalse(first.isFileEnabled());
+        assertEquals(Arrays.asList("from first", "from second"), Files.readAllLines(tempLog.toPath()));
+    }
+
+    /**
+     * selected MDC values are printed in front of messages, in every mode
+     */
+    @Test
+    public void mdcKeys() throws IOException {
+        System.setProperty("jcdp.mdc.keys", "requestId, tenant");
+        System.setProperty("jcdp.gcfree", "true");
+        JcdpMDCAdapter mdc = new JcdpMDCAdapter();
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+
+        logger.warn("no context");
+        mdc.put("tenant", "acme");
+        mdc.put("other", "ignored");
+        logger.warn("one key");
+        mdc.put("requestId", "42");
+        logger.warn("{} keys", 2);
+        System.setProperty("jcdp.gcfree", "false");
+        factory.reconfigure();
+        logger.warn("{} keys", "two");
+        mdc.clear();
+        factory.shutdown();
+
+        assertEquals(Arrays.asList("no context", "[tenant=acme] one key",
+                "[requestId=42 tenant=acme] 2 keys", "[requestId=42 tenant=acme] two keys"),
+                Files.readAllLines(tempLog.toPath()));
+    }
+
+    /**
+     * in garbage-free mode, logging from an argument's toString() must not overwrite the outer message,
+     * and a trailing exception is logged as such
+     */
+    @Test
+    public void gcFreeReentrant() throws IOException {
+        System.setProperty("jcdp.gcfree", "true");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+        Object value = new Object() {
+            @Override
+            public String toString() {
+                logger.warn("inner {}", "call");
+                return "VALUE";
+            }
+        };
+
+        logger.warn("{} suffix", value);
+        logger.warn("{} and {}", value, "more");
+        logger.warn("failed {}", "here", new IllegalStateException("boom"));
+        factory.shutdown();
+
+        List<String> lines = Files.readAllLines(tempLog.toPath());
+        assertEquals(Arrays.asList("inner call", "VALUE suffix", "inner call", "VALUE and more", "failed here"),
+                lines.subList(0, 5));
+        assertEquals("java.lang.IllegalStateException: boom", lines.get(5).trim());
+    }
+
+    /**
+     * markers can be turned off or sent to their own file, including markers referencing them
+     */
+    @Test
+    public void markers() throws IOException {
+        File auditLog = File.createTempFile("audit_", "_JcdpAdapterFactoryTest");
+        auditLog.deleteOnExit();
+        System.setProperty("jcdp.marker.SQL.enabled", "false");
+        System.setProperty("jcdp.marker.AUDIT.file", auditLog.getAbsolutePath());
+        Marker audit = MarkerFactory.getDetachedMarker("AUDIT");
+        Marker login = MarkerFactory.getDetachedMarker("LOGIN");
+        login.add(audit);
+        Marker sql = MarkerFactory.getDetachedMarker("SQL");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+
+        assertFalse(logger.isWarnEnabled(sql));
+        assertTrue(logger.isWarnEnabled(audit));
+        logger.warn("plain");
+        logger.warn(sql, "select {}", 1);
+        logger.warn(audit, "user {} deleted", "bob");
+        logger.warn(login, "user {} logged in", "alice");
+        logger.warn(MarkerFactory.getDetachedMarker("OTHER"), "other");
+        factory.shutdown();
+
+        assertEquals(Arrays.asList("plain", "other"), Files.readAllLines(tempLog.toPath()));
+        assertEquals(Arrays.asList("user bob deleted", "user alice logged in"), Files.readAllLines(auditLog.toPath()));
+    }
+
+    /**
+     * a marked event keeps its trailing exception, and its write to the marker's file is counted
+     */
+    @Test
+    public void markedException() throws IOException {
+        File auditLog = File.createTempFile("audit_", "_JcdpAdapterFactoryTest");
+        auditLog.deleteOnExit();
+        System.setProperty("jcdp.marker.AUDIT.file", auditLog.getAbsolutePath());
+        System.setProperty("jcdp.metrics.enabled", "true");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+
+        logger.error(MarkerFactory.getDetachedMarker("AUDIT"), "failed {}", 42, new IllegalStateException("boom"));
+        JcdpMetrics.Snapshot snapshot = factory.getMetrics().snapshot();
+        factory.shutdown();
+
+        List<String> lines = Files.readAllLines(auditLog.toPath());
+        assertEquals("failed 42", lines.get(0));
+        assertEquals("\t\tjava.lang.IllegalStateException: boom", lines.get(1));
+        assertEquals(Long.valueOf(1), snapshot.getEvents().get(JcdpLogLevel.ERROR));
+        assertEquals(1, snapshot.getWriteCount());
+        assertTrue(Files.readAllLines(tempLog.toPath()).isEmpty());
+    }
+
+    /**
+     * named sinks get events at or above their own level, from matching loggers only
+     */
+    @Test
+    public void sinks() throws IOException {
+        File errorLog = File.createTempFile("errors_", "_JcdpAdapterFactoryTest");
+        errorLog.deleteOnExit();
+        File auditLog = File.createTempFile("audit_", "_JcdpAdapterFactoryTest");
+        auditLog.deleteOnExit();
+        System.setProperty("jcdp.sink.errors.path", errorLog.getAbsolutePath());
+        System.setProperty("jcdp.sink.errors.level", "ERROR");
+        System.setProperty("jcdp.sink.audit.path", auditLog.getAbsolutePath());
+        System.setProperty("jcdp.sink.audit.loggers", "com.acme.audit");
+        System.setProperty("jcdp.sink.audit.format", "json");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger app = factory.getLogger("Something");
+        Logger audit = factory.getLogger("com.acme.audit.Login");
+        Logger other = factory.getLogger("com.acme.auditor");
+
+        app.debug("starting");
+        app.error("failed");
+        audit.info("user {} logged in", "alice");
+        audit.error("user {} locked out", "bob");
+        other.warn("not audited");
+        factory.shutdown();
+
+        assertEquals(Arrays.asList("starting", "failed", "user alice logged in", "user bob locked out", "not audited"),
+                Files.readAllLines(tempLog.toPath()));
+        assertEquals(Arrays.asList("failed", "user bob locked out"), Files.readAllLines(errorLog.toPath()));
+        List<String> records = Files.readAllLines(auditLog.toPath());
+        assertEquals(2, records.size());
+        assertTrue(records.get(0).contains("\"message\":\"user alice logged in\""));
+        assertTrue(records.get(1).contains("\"level\":\"ERROR\""));
+        assertTrue(records.get(1).contains("\"logger\":\"com.acme.audit.Login\""));
+    }
+
+    /**
+     * a file shared by several marker rules is closed once they are all released
+     */
+    @Test
+    public void sharedMarkerFile() throws IOException {
+        File auditLog = File.createTempFile("audit_", "_JcdpAdapterFactoryTest");
+        auditLog.deleteOnExit();
+        System.setProperty("jcdp.marker.AUDIT.file", auditLog.getAbsolutePath());
+        System.setProperty("jcdp.marker.SECURITY.file", auditLog.getAbsolutePath());
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+
+        logger.warn(MarkerFactory.getDetachedMarker("AUDIT"), "audit");
+        logger.warn(MarkerFactory.getDetachedMarker("SECURITY"), "security");
+        factory.reconfigure();
+        assertTrue(SinkRegistry.bytesWritten().containsKey(auditLog.getCanonicalPath()));
+        factory.shutdown();
+
+        assertFalse(SinkRegistry.bytesWritten().containsKey(auditLog.getCanonicalPath()));
+        assertEquals(Arrays.asList("audit", "security"), Files.readAllLines(auditLog.toPath()));
+    }
+
+    /**
+     * a file shared by several named sinks is closed once they are all released
+     */
+    @Test
+    public void sharedSinkFile() throws IOException {
+        File problems = File.createTempFile("problems_", "_JcdpAdapterFactoryTest");
+        problems.deleteOnExit();
+        System.setProperty("jcdp.sink.errors.path", problems.getAbsolutePath());
+        System.setProperty("jcdp.sink.errors.level", "ERROR");
+        System.setProperty("jcdp.sink.warnings.path", problems.getAbsolutePath());
+        System.setProperty("jcdp.sink.warnings.level", "WARN");
+        System.setProperty("jcdp.sink.warnings.loggers", "com.acme");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        factory.getLogger("Something").warn("not here");
+        factory.getLogger("Something").error("error");
+        factory.getLogger("com.acme.Thing").warn("warning");
+
+        factory.reconfigure();
+        assertTrue(SinkRegistry.bytesWritten().containsKey(problems.getCanonicalPath()));
+        factory.shutdown();
+
+        assertFalse(SinkRegistry.bytesWritten().containsKey(problems.getCanonicalPath()));
+        assertEquals(Arrays.asList("error", "warning"), Files.readAllLines(problems.toPath()));
+    }
+
+    /**
+     * suppliers are only called for enabled levels
+     */
+    @Test
+    public void suppliers() throws IOException {
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        JcdpLogger logger = (JcdpLogger) factory.getLogger("Something");
+        Supplier<String> forbidden = () -> {
+            throw new AssertionError("evaluated");
+        };
+
+        logger.trace("never {}", forbidden);
+        logger.atTrace().addArgument(forbidden).setMessage(forbidden).log();
+        logger.debug("lazy {} {}", () -> 1, () -> "two");
+        logger.atWarn().addArgument(() -> "fluent").addArgument(3).log("{} {}");
+        logger.atError().addMarker(MarkerFactory.getDetachedMarker("OTHER"))
+                .setCause(new IllegalStateException("boom")).log("failed");
+        factory.shutdown();
+
+        List<String> lines = Files.readAllLines(tempLog.toPath());
+        assertEquals(Arrays.asList("lazy 1 two", "fluent 3", "failed"), lines.subList(0, 3));
+        assertEquals("\t\tjava.lang.IllegalStateException: boom", lines.get(3));
+    }
+
+    /**
+     * repeats are dropped and counted, rate limits only apply to matching loggers
+     */
+    @Test
+    public void suppression() throws IOException {
+        System.setProperty("jcdp.suppress.enabled", "true");
+        System.setProperty("jcdp.ratelimit.com.acme", "2/h");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+        Logger limited = factory.getLogger("com.acme.Foo");
+
+        for (int i = 0; i < 3; i++) {
+            logger.warn("retry {}", i);
+        }
+        logger.warn("done");
+        for (int i = 0; i < 3; i++) {
+            limited.warn("limited " + i);
+        }
+        factory.shutdown();
+
+        // what was dropped and never reported is reported on shutdown, in no particular logger order
+        List<String> lines = Files.readAllLines(tempLog.toPath());
+        assertEquals(Arrays.asList("retry 0", "done", "limited 0", "limited 1"), lines.subList(0, 4));
+        assertEquals(new HashSet<>(Arrays.asList("Suppressed 2 similar messages: retry {}",
+                "Rate limit exceeded, dropped 1 messages")), new HashSet<>(lines.subList(4, lines.size())));
+    }
+
+    /**
+     * builder suppliers are not called for events dropped by suppression or rate limits
+     */
+    @Test
+    public void throttledSuppliers() throws IOException {
+        System.setProperty("jcdp.suppress.enabled", "true");
+        System.setProperty("jcdp.ratelimit.com.acme", "1/h");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        JcdpLogger logger = (JcdpLogger) factory.getLogger("Something");
+        JcdpLogger limited = (JcdpLogger) factory.getLogger("com.acme.Foo");
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            logger.atWarn().addArgument(calls::incrementAndGet).log("retry {}");
+        }
+        for (int i = 0; i < 3; i++) {
+            limited.atWarn().setMessage(() -> "limited " + calls.incrementAndGet()).log();
+        }
+        factory.shutdown();
+
+        assertEquals(2, calls.get());
+        assertEquals(Arrays.asList("retry 1", "limited 2"), Files.readAllLines(tempLog.toPath()).subList(0, 2));
+    }
+
+    /**
+     * counts of suppressed repeats survive the rate limit, and are reported once their window is over
+     */
+    @Test
+    public void suppressionAndRateLimit() throws Exception {
+        System.setProperty("jcdp.suppress.enabled", "true");
+        System.setProperty("jcdp.suppress.window.ms", "100");
+        System.setProperty("jcdp.ratelimit.com.acme", "1/s");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger limited = factory.getLogger("com.acme.Foo");
+        Logger logger = factory.getLogger("Something");
+
+        // the repeat opening a new window is rate limited, but its count is kept
+        limited.warn("retry");
+        limited.warn("retry");
+        limited.warn("retry");
+        Thread.sleep(150);
+        limited.warn("retry");
+        Thread.sleep(1000);
+        limited.warn("retry");
+        // a burst that stops is reported with the logger's next event
+        logger.warn("busy");
+        logger.warn("busy");
+        logger.warn("busy");
+        Thread.sleep(150);
+        logger.warn("something else");
+        factory.shutdown();
+
+        assertEquals(Arrays.asList("retry", "Suppressed 2 similar messages: retry",
+                "Rate limit exceeded, dropped 1 messages", "retry",
+                "busy", "Suppressed 2 similar messages: busy", "something else"),
+                Files.readAllLines(tempLog.toPath()));
+    }
+
+    /**
+     * metrics only move while enabled
+     */
+    @Test
+    public void metrics() throws IOException {
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+        logger.warn("not counted");
+        assertEquals(Long.valueOf(0), factory.getMetrics().snapshot().getEvents().get(JcdpLogLevel.WARN));
+
+        System.setProperty("jcdp.metrics.enabled", "true");
+        factory.reconfigure();
+        logger.warn("counted");
+        logger.error("failed", new IllegalStateException("boom"));
+        factory.getLogger("Other").info("counted too");
+        logger.trace("disabled level");
+        JcdpMetrics.Snapshot snapshot = factory.getMetrics().snapshot();
+        factory.shutdown();
+
+        assertEquals(Long.valueOf(1), snapshot.getEvents().get(JcdpLogLevel.WARN));
+        assertEquals(Long.valueOf(1), snapshot.getEvents().get(JcdpLogLevel.ERROR));
+        assertEquals(Long.valueOf(0), snapshot.getEvents().get(JcdpLogLevel.TRACE));
+        assertEquals(Long.valueOf(2), snapshot.getLoggerEvents().get("Something"));
+        assertEquals(Long.valueOf(1), snapshot.getLoggerEvents().get("Other"));
+        assertEquals(3, snapshot.getWriteCount());
+        assertTrue(snapshot.getWriteLatency(50) > 0);
+        assertTrue(snapshot.getWriteLatencyMax() >= snapshot.getWriteLatency(99));
+        assertTrue(snapshot.getBytesWritten().get(JcdpMetrics.CONSOLE) > 0);
+        assertTrue(snapshot.getBytesWritten().containsKey(tempLog.getCanonicalPath()));
+    }
+
+    /**
+     * thousands of virtual threads logging at once lose or mangle no lines; skipped before JDK 21
+     */
+    @Test
+    public void virtualThreads() throws Exception {
+        ExecutorService executor;
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            Assume.assumeNoException(e);
+            return;
+        }
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+        int threads = 5000;
+        int events = 20;
+        try {
+            for (int i = 0; i < threads; i++) {
+                int thread = i;
+                executor.submit(() -> {
+                    for (int j = 0; j < events; j++) {
+                        logger.info("thread {} event {}", thread, j);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+            factory.shutdown();
+        }
+
+        List<String> lines = Files.readAllLines(tempLog.toPath());
+        assertEquals(threads * events, lines.size());
+        assertTrue(lines.stream().allMatch(line -> line.matches("thread \\d+ event \\d+")));
+    }
+
+    /**
+     * in JSON mode, each event is one line carrying its own context, even when logged asynchronously
+     */
+    @Test
+    public void jsonFile() throws IOException {
+        System.setProperty("jcdp.file.format", "json");
+        System.setProperty("jcdp.timestamp.enabled", "true");
+        System.setProperty("jcdp.async.enabled", "true");
+        JcdpMDCAdapter mdc = new JcdpMDCAdapter();
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+        mdc.put("requestId", "42");
+        try {
+            logger.warn("hello {}", "world");
+            logger.error("failed", new IllegalStateException("boom"));
+        } finally {
+            mdc.clear();
+            System.setProperty("jcdp.timestamp.enabled", "false");
+            factory.shutdown();
+        }
+
+        List<String> lines = Files.readAllLines(tempLog.toPath());
+        assertEquals(2, lines.size());
+        String thread = Thread.currentThread().getName();
+        assertTrue(lines.get(0).matches("\\{\"timestamp\":\\d+,\"level\":\"WARN\",\"logger\":\"Something\","
+                + "\"thread\":\"" + Pattern.quote(thread) + "\",\"message\":\"hello world\",\"mdc\":\\{\"requestId\":\"42\"}}"));
+        assertTrue(lines.get(1).contains("\"exception\":{\"class\":\"java.lang.IllegalStateException\",\"message\":\"boom\""));
+    }
+
+    /**
+     * events queued in async mode must all be written by the time shutdown returns
+     */
+    @Test
+    public void asyncFlushesOnShutdown() throws IOException {
+        System.setProperty("jcdp.async.enabled", "true");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+        for (int i = 0; i < 100; i++) {
+            logger.warn("async {}", i);
+        }
+        factory.shutdown();
+
+        List<String> lines = Files.readAllLines(tempLog.toPath());
+        assertTrue(lines.get(0).endsWith("async 0"));
+        assertTrue(lines.get(99).endsWith("async 99"));
+    }
+
+    /**
+     * the writer thread logging into its own full buffer prints directly instead of waiting for itself
+     */
+    @Test
+    public void asyncWriterLogs() throws Exception {
+        System.setProperty("jcdp.async.enabled", "true");
+        System.setProperty("jcdp.async.capacity", "2");
+        JcdpAdapterFactory factory = new JcdpAdapterFactory();
+        Logger logger = factory.getLogger("Something");
+        CountDownLatch rendered = new CountDownLatch(1);
+        // rendered on the writer thread
+        Exception chatty = new Exception() {
+            @Override
+            public String getMessage() {
+                for (int i = 0; i < 10; i++) {
+                    logger.warn("rendering");
+                }
+                rendered.countDown();
+                return "chatty";
+            }
+        };
+        logger.warn("failed", chatty);
+        boolean done = rendered.await(5, TimeUnit.SECONDS);
+        factory.shutdown();
+
+        assertTrue(done);
+        List<String> lines = Files.readAllLines(tempLog.toPath());
+        assertTrue(lines.contains("failed"));
+        assertEquals(10, lines.stream().filter("rendering"::equals).count());
+    }
+
     @Test
     public void getLoggerApiTest() throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
         // this tests for the existence of methods,
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class JcdpMDCAdapterTest {
+
+    private final JcdpMDCAdapter mdc = new JcdpMDCAdapter();
+
+    @After
+    public void tearDown() {
+        mdc.clear();
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertNull(mdc.get("key"));
+        assertNull(JcdpMDCAdapter.context());
+        mdc.put("key", "value");
+        mdc.put("other", "value2");
+        assertEquals("value", mdc.get("key"));
+        mdc.remove("key");
+        assertNull(mdc.get("key"));
+        mdc.remove("other");
+        // an empty context is dropped entirely
+        assertNull(JcdpMDCAdapter.context());
+    }
+
+    /**
+     * a map handed to loggers must never change under them
+     */
+    @Test
+    public void copyOnWrite() {
+        mdc.put("key", "value");
+        Map<String, String> snapshot = JcdpMDCAdapter.context();
+        mdc.put("key", "changed");
+        mdc.remove("key");
+        assertEquals(Collections.singletonMap("key", "value"), snapshot);
+    }
+
+    @Test
+    public void contextMap() {
+        Map<String, String> map = new HashMap<>();
+        map.put("key", "value");
+        mdc.setContextMap(map);
+        map.put("key", "changed");
+        assertEquals("value", mdc.get("key"));
+
+        Map<String, String> copy = mdc.getCopyOfContextMap();
+        copy.put("key", "changed");
+        assertEquals("value", mdc.get("key"));
+
+        mdc.setContextMap(null);
+        assertNull(mdc.getCopyOfContextMap());
+    }
+
+    @Test
+    public void contextIsPerThread() throws InterruptedException {
+        mdc.put("key", "value");
+        String[] seen = new String[1];
+        Thread thread = new Thread(() -> seen[0] = mdc.get("key"));
+        thread.start();
+        thread.join();
+        assertNull(seen[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullKey() {
+        mdc.put(null, "value");
+    }
+}
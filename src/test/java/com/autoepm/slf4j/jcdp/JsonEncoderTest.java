@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class JsonEncoderTest {
+
+    private static String encode(String message, Throwable t) {
+        StringBuilder sb = new StringBuilder();
+        JsonEncoder.encode(sb, TimestampFormatter.DEFAULT, 1546300800000L, JcdpLogLevel.WARN, "com.acme.Foo", "main", message,
+                Collections.singletonMap("requestId", "42"), t);
+        return sb.toString();
+    }
+
+    @Test
+    public void event() {
+        assertEquals("{\"timestamp\":1546300800000,\"level\":\"WARN\",\"logger\":\"com.acme.Foo\","
+                + "\"thread\":\"main\",\"message\":\"hello\",\"mdc\":{\"requestId\":\"42\"}}", encode("hello", null));
+    }
+
+    @Test
+    public void escaping() {
+        assertTrue(encode("say \"hi\"\\\n\tnow\u0001", null)
+                .contains("\"message\":\"say \\\"hi\\\"\\\\\\n\\tnow\\u0001\""));
+        assertTrue(encode(null, null).contains("\"message\":null"));
+    }
+
+    @Test
+    public void exception() {
+        IOException cause = new IOException("disk");
+        IllegalStateException e = new IllegalStateException("boom", cause);
+        e.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("com.acme.Foo", "bar", "Foo.java", 12),
+                new StackTraceElement("com.acme.Foo", "run", null, -1)});
+        cause.setStackTrace(new StackTraceElement[0]);
+        e.addSuppressed(cause);
+
+        assertTrue(encode("failed", e).endsWith(",\"exception\":{\"class\":\"java.lang.IllegalStateException\","
+                + "\"message\":\"boom\",\"frames\":[\"com.acme.Foo.bar(Foo.java:12)\",\"com.acme.Foo.run(Unknown Source)\"],"
+                + "\"suppressed\":[{\"class\":\"java.io.IOException\",\"message\":\"disk\",\"frames\":[]}],"
+                + "\"cause\":{\"circular\":\"java.io.IOException: disk\"}}}"));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MappedFileSinkTest {
+
+    private File tempLog;
+
+    @Before
+    public void setUp() throws Exception {
+        tempLog = File.createTempFile("test_", "_MappedFileSinkTest");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tempLog.delete();
+    }
+
+    @Test
+    public void appendsAndTrimsOnClose() throws Exception {
+        Files.write(tempLog.toPath(), "existing\n".getBytes());
+        MappedFileSink sink = new MappedFileSink(tempLog.getCanonicalPath(), MappedFileSink.DEFAULT_REGION_SIZE);
+        sink.write("first", JcdpLogLevel.INFO);
+        sink.write("second", JcdpLogLevel.ERROR);
+        sink.close();
+
+        List<String> lines = Files.readAllLines(tempLog.toPath());
+        assertEquals(3, lines.size());
+        assertEquals("existing", lines.get(0));
+        assertEquals("second", lines.get(2));
+    }
+
+    /**
+     * several threads overflowing many small regions: every line must come out whole
+     */
+    @Test
+    public void concurrentWritersAcrossRegions() throws Exception {
+        final int threads = 4;
+        final int perThread = 5000;
+        MappedFileSink sink = new MappedFileSink(tempLog.getCanonicalPath(), 64 * 1024);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final String prefix = "thread " + t + " line ";
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    sink.write(prefix + i, JcdpLogLevel.INFO);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        sink.close();
+
+        int count = 0;
+        for (String line : Files.readAllLines(tempLog.toPath())) {
+            if (line.trim().isEmpty()) continue; // region padding
+            assertTrue(line, line.matches("thread \\d line \\d+"));
+            count++;
+        }
+        assertEquals(threads * perThread, count);
+    }
+
+    /**
+     * an event bigger than a region spills into the following ones instead of being cut short
+     */
+    @Test
+    public void eventLargerThanRegion() throws Exception {
+        StringBuilder large = new StringBuilder();
+        while (large.length() < 200 * 1024) {
+            large.append("0123456789");
+        }
+        MappedFileSink sink = new MappedFileSink(tempLog.getCanonicalPath(), 64 * 1024);
+        sink.write("before", JcdpLogLevel.INFO);
+        sink.write(large, JcdpLogLevel.INFO);
+        sink.write("after", JcdpLogLevel.INFO);
+        sink.close();
+
+        List<String> lines = Files.readAllLines(tempLog.toPath());
+        assertEquals(3, lines.size());
+        assertEquals("before", lines.get(0));
+        assertEquals(large.toString(), lines.get(1));
+        assertEquals("after", lines.get(2));
+    }
+}
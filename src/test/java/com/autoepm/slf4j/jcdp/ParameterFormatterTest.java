@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.junit.Test;
+import org.slf4j.helpers.FormattingTuple;
+import org.slf4j.helpers.MessageFormatter;
+
+import static org.junit.Assert.*;
+
+public class ParameterFormatterTest {
+
+    /**
+     * output must match what SLF4J's own formatter produces
+     */
+    @Test
+    public void matchesMessageFormatter() {
+        Object[][] cases = {
+                {"plain"},
+                {"x={}", 42},
+                {"x={} y={}", "a", 3.5},
+                {"{}{}{}", 'c', true, 7L},
+                {"escaped \\{} then {}", "arg"},
+                {"double escaped \\\\{}", "arg"},
+                {"missing {} {}", "one"},
+                {"extra {}", "one", "two"},
+                {"array {}", new int[]{1, 2}},
+                {"null {}", null},
+                {"float {}", 1.25f},
+                {null, "arg"},
+        };
+        for (Object[] c : cases) {
+            String pattern = (String) c[0];
+            Object[] args = new Object[c.length - 1];
+            System.arraycopy(c, 1, args, 0, args.length);
+            String expected = MessageFormatter.arrayFormat(pattern, args).getMessage();
+
+            StringBuilder sb = new StringBuilder();
+            ParameterFormatter.format(sb, pattern, args);
+            assertEquals(pattern, String.valueOf(expected), sb.toString());
+            if (args.length == 1) {
+                sb.setLength(0);
+                ParameterFormatter.format(sb, pattern, args[0]);
+                assertEquals(pattern, String.valueOf(MessageFormatter.format(pattern, args[0]).getMessage()), sb.toString());
+            } else if (args.length == 2) {
+                sb.setLength(0);
+                ParameterFormatter.format(sb, pattern, args[0], args[1]);
+                assertEquals(pattern, expected, sb.toString());
+            }
+        }
+    }
+
+    /**
+     * a trailing exception is left out of the text and returned, like SLF4J does
+     */
+    @Test
+    public void trailingThrowable() {
+        Exception ex = new Exception("boom");
+        Object[][] cases = {
+                {"x {}", "a", ex},
+                {"x {} {}", "a", ex},
+                {"x {}", ex},
+                {"x {} {}", "a", "b", ex},
+                {"x {}", ex, "a"},
+        };
+        for (Object[] c : cases) {
+            String pattern = (String) c[0];
+            Object[] args = new Object[c.length - 1];
+            System.arraycopy(c, 1, args, 0, args.length);
+            FormattingTuple expected = MessageFormatter.arrayFormat(pattern, args);
+
+            StringBuilder sb = new StringBuilder();
+            assertSame(pattern, expected.getThrowable(), ParameterFormatter.format(sb, pattern, args));
+            assertEquals(pattern, expected.getMessage(), sb.toString());
+            sb.setLength(0);
+            Throwable t = args.length == 1 ? ParameterFormatter.format(sb, pattern, args[0])
+                    : args.length == 2 ? ParameterFormatter.format(sb, pattern, args[0], args[1])
+                    : ParameterFormatter.format(sb, pattern, args);
+            assertSame(pattern, expected.getThrowable(), t);
+            assertEquals(pattern, expected.getMessage(), sb.toString());
+        }
+    }
+
+    @Test
+    public void failingToString() {
+        Object bad = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("nope");
+            }
+        };
+        StringBuilder sb = new StringBuilder();
+        ParameterFormatter.format(sb, "value: {}", bad);
+        assertEquals("value: [FAILED toString()]", sb.toString());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class RingBufferTest {
+
+    @Test
+    public void capacityIsRoundedToPowerOfTwo() {
+        assertEquals(8, new RingBuffer(5).capacity());
+        assertEquals(8, new RingBuffer(8).capacity());
+        assertEquals(2, new RingBuffer(0).capacity());
+    }
+
+    @Test
+    public void offerFailsWhenFullAndDrainIsFifo() {
+        RingBuffer buffer = new RingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(null, JcdpLogLevel.INFO, "msg " + i, null, 0L, null, null));
+        }
+        assertFalse(buffer.offer(null, JcdpLogLevel.INFO, "overflow", null, 0L, null, null));
+        assertEquals(4, buffer.size());
+
+        List<String> drained = new ArrayList<>();
+        assertEquals(4, buffer.drain((adapter, level, msg, t, millis, thread, mdc) -> drained.add(msg), Integer.MAX_VALUE));
+        assertEquals("msg 0", drained.get(0));
+        assertEquals("msg 3", drained.get(3));
+        assertTrue(buffer.isEmpty());
+        // slots are reusable on the next lap
+        assertTrue(buffer.offer(null, JcdpLogLevel.INFO, "again", null, 0L, null, null));
+    }
+
+    /**
+     * several producers against one consumer: nothing lost, per-producer order kept
+     */
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 20000;
+        RingBuffer buffer = new RingBuffer(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final String prefix = p + ":";
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(null, JcdpLogLevel.INFO, prefix + i, null, 0L, null, null)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        int[] next = new int[producers];
+        start.countDown();
+        int total = 0;
+        while (total < producers * perProducer) {
+            total += buffer.drain((adapter, level, msg, t, millis, thread, mdc) -> {
+                int sep = msg.indexOf(':');
+                int producer = Integer.parseInt(msg.substring(0, sep));
+                assertEquals(next[producer]++, Integer.parseInt(msg.substring(sep + 1)));
+            }, 100);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(buffer.isEmpty());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SuppressorTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void repeatsWithinWindow() {
+        Suppressor suppressor = new Suppressor(100, 16);
+        assertEquals(0, suppressor.admit(JcdpLogLevel.WARN, "Retry {}", null, 0));
+        assertEquals(-1, suppressor.admit(JcdpLogLevel.WARN, "Retry {}", null, 10 * MS));
+        assertEquals(-1, suppressor.admit(JcdpLogLevel.WARN, "Retry {}", null, 50 * MS));
+        // a new window starts with the count of what was dropped
+        assertEquals(2, suppressor.admit(JcdpLogLevel.WARN, "Retry {}", null, 120 * MS));
+        assertEquals(-1, suppressor.admit(JcdpLogLevel.WARN, "Retry {}", null, 130 * MS));
+        assertEquals(1, suppressor.admit(JcdpLogLevel.WARN, "Retry {}", null, 300 * MS));
+    }
+
+    @Test
+    public void levelAndExceptionTypeAreKeys() {
+        Suppressor suppressor = new Suppressor(100, 16);
+        assertEquals(0, suppressor.admit(JcdpLogLevel.WARN, "Failed", null, 0));
+        assertEquals(0, suppressor.admit(JcdpLogLevel.ERROR, "Failed", null, 0));
+        assertEquals(0, suppressor.admit(JcdpLogLevel.ERROR, "Failed", new IOException(), 0));
+        assertEquals(0, suppressor.admit(JcdpLogLevel.ERROR, "Failed", new IllegalStateException(), 0));
+        assertEquals(-1, suppressor.admit(JcdpLogLevel.ERROR, "Failed", new IOException("other"), 0));
+        assertEquals(0, suppressor.admit(JcdpLogLevel.ERROR, "Other", null, 0));
+    }
+
+    @Test
+    public void restoredAndExpiredCounts() {
+        Suppressor suppressor = new Suppressor(100, 16);
+        List<String> reported = new ArrayList<>();
+        Suppressor.Reporter reporter = (level, format, count) -> reported.add(level + " " + format + " " + count);
+        suppressor.admit(JcdpLogLevel.WARN, "Retry", null, 0);
+        suppressor.admit(JcdpLogLevel.WARN, "Retry", null, 10 * MS);
+        assertFalse(suppressor.hasExpired(50 * MS));
+        assertTrue(suppressor.hasExpired(100 * MS));
+
+        // the event opening the next window was dropped after all
+        assertEquals(1, suppressor.admit(JcdpLogLevel.WARN, "Retry", null, 120 * MS));
+        suppressor.restore(JcdpLogLevel.WARN, "Retry", null, 1);
+        suppressor.reportExpired(150 * MS, reporter);
+        assertEquals(Collections.emptyList(), reported);
+        assertTrue(suppressor.hasExpired(220 * MS));
+        suppressor.reportExpired(220 * MS, reporter);
+        assertEquals(Collections.singletonList("WARN Retry 1"), reported);
+        assertFalse(suppressor.hasExpired(1000 * MS));
+
+        // a reported count is not reported again with the next repeat
+        assertEquals(0, suppressor.admit(JcdpLogLevel.WARN, "Retry", null, 250 * MS));
+        assertEquals(-1, suppressor.admit(JcdpLogLevel.WARN, "Retry", null, 260 * MS));
+        suppressor.reportExpired(Long.MAX_VALUE, reporter);
+        assertEquals(Arrays.asList("WARN Retry 1", "WARN Retry 1"), reported);
+    }
+
+    @Test
+    public void bounded() {
+        Suppressor suppressor = new Suppressor(100, 2);
+        suppressor.admit(JcdpLogLevel.INFO, "a", null, 0);
+        suppressor.admit(JcdpLogLevel.INFO, "b", null, 0);
+        // full: untracked events always get through
+        assertEquals(0, suppressor.admit(JcdpLogLevel.INFO, "c", null, 0));
+        assertEquals(0, suppressor.admit(JcdpLogLevel.INFO, "c", null, 0));
+        // once a and b are idle, c takes their place
+        assertEquals(0, suppressor.admit(JcdpLogLevel.INFO, "c", null, 200 * MS));
+        assertEquals(-1, suppressor.admit(JcdpLogLevel.INFO, "c", null, 210 * MS));
+    }
+
+    @Test
+    public void rateLimit() {
+        RateLimiter limiter = new RateLimiter(10, 1, TimeUnit.SECONDS);
+        long now = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiter.tryAcquire(now));
+        }
+        assertEquals(-1, limiter.tryAcquire(now));
+        assertEquals(-1, limiter.tryAcquire(now + 50 * MS));
+        // one token every 100ms
+        assertEquals(2, limiter.tryAcquire(now + 100 * MS));
+        assertEquals(-1, limiter.tryAcquire(now + 150 * MS));
+    }
+
+    @Test
+    public void parseRate() {
+        RateLimiter limiter = RateLimiter.parse(" 2 / m ");
+        long now = System.nanoTime();
+        assertEquals(0, limiter.tryAcquire(now));
+        assertEquals(0, limiter.tryAcquire(now));
+        assertEquals(-1, limiter.tryAcquire(now));
+        try {
+            RateLimiter.parse("100/day");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}
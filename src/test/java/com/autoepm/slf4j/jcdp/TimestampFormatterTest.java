@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.autoepm.slf4j.jcdp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class TimestampFormatterTest {
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    private static String bytes(TimestampFormatter formatter, long millis) {
+        ByteBuffer out = ByteBuffer.allocate(formatter.maxLength());
+        formatter.format(millis, out);
+        return new String(out.array(), 0, out.position(), StandardCharsets.US_ASCII);
+    }
+
+    private static String text(TimestampFormatter formatter, long millis) {
+        StringBuilder sb = new StringBuilder();
+        formatter.format(millis, sb);
+        return sb.toString();
+    }
+
+    /**
+     * the default style must match what JCDP printed
+     */
+    @Test
+    public void jcdp() {
+        SimpleDateFormat jcdp = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+        jcdp.setTimeZone(TimeZone.getTimeZone(UTC));
+        TimestampFormatter formatter = new TimestampFormatter(TimestampFormatter.Style.JCDP, UTC);
+        long millis = 1546300800123L;
+        assertEquals(jcdp.format(new Date(millis)), bytes(formatter, millis));
+        assertEquals("01/01/2019 00:00:00", text(formatter, millis));
+    }
+
+    /**
+     * milliseconds are patched into the cached second, which is replaced when the second changes
+     */
+    @Test
+    public void iso8601() {
+        TimestampFormatter formatter = new TimestampFormatter(TimestampFormatter.Style.ISO8601, UTC);
+        assertEquals("2019-01-01T00:00:00.123Z", bytes(formatter, 1546300800123L));
+        assertEquals("2019-01-01T00:00:00.007Z", bytes(formatter, 1546300800007L));
+        assertEquals("2019-01-01T00:00:01.999Z", text(formatter, 1546300801999L));
+        assertEquals("2018-12-31T23:59:59.999Z", bytes(formatter, 1546300799999L));
+
+        TimestampFormatter paris = new TimestampFormatter(TimestampFormatter.Style.ISO8601, ZoneId.of("Europe/Paris"));
+        assertEquals("2019-01-01T01:00:00.050+01:00", text(paris, 1546300800050L));
+    }
+
+    @Test
+    public void epoch() {
+        TimestampFormatter formatter = TimestampFormatter.of("EPOCH");
+        assertEquals("1546300800123", bytes(formatter, 1546300800123L));
+        assertEquals("0", bytes(formatter, 0));
+        assertEquals("-42", bytes(formatter, -42));
+        assertEquals(String.valueOf(Long.MIN_VALUE), bytes(formatter, Long.MIN_VALUE));
+        assertEquals("1546300800123", text(formatter, 1546300800123L));
+    }
+}
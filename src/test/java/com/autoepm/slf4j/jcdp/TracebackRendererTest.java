@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019 Giacomo Lacava, TarGLet Limited
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.autoepm.slf4j.jcdp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TracebackRendererTest {
+
+    private static final String NL = System.lineSeparator();
+
+    /**
+     * same lines the adapter used to print one by one
+     */
+    @Test
+    public void matchesLineByLineOutput() {
+        Exception e = new IllegalStateException("boom");
+        StringBuilder expected = new StringBuilder("failed").append(NL).append("\t\t").append(e);
+        for (StackTraceElement line : e.getStackTrace()) {
+            expected.append(NL).append("\t\t").append(line);
+        }
+        assertEquals(expected.toString(), TracebackRenderer.DEFAULT.render("failed", e));
+    }
+
+    @Test
+    public void includesCausesAndSuppressed() {
+        Exception cause = new IllegalArgumentException("root");
+        Exception e = new RuntimeException("outer", cause);
+        e.addSuppressed(new IllegalStateException("hidden"));
+        String rendered = TracebackRenderer.DEFAULT.render("failed", e);
+
+        assertTrue(rendered.contains(NL + "\t\tSuppressed: java.lang.IllegalStateException: hidden" + NL));
+        assertTrue(rendered.contains(NL + "\t\tCaused by: java.lang.IllegalArgumentException: root" + NL));
+        assertFalse(rendered.endsWith(NL));
+    }
+
+    @Test
+    public void survivesCircularCauses() {
+        Exception a = new Exception("a");
+        Exception b = new Exception("b", a);
+        a.initCause(b);
+        assertTrue(TracebackRenderer.DEFAULT.render("loop", a).contains("[CIRCULAR REFERENCE: java.lang.Exception: a]"));
+    }
+
+    private static StackTraceElement frame(String className, int line) {
+        return new StackTraceElement(className, "run", "Source.java", line);
+    }
+
+    @Test
+    public void collapsesFramesSharedWithEnclosing() {
+        Exception cause = new IllegalArgumentException("root");
+        cause.setStackTrace(new StackTraceElement[]{frame("a.Inner", 1), frame("a.Main", 2), frame("a.Main", 3)});
+        Exception e = new RuntimeException("outer", cause);
+        e.setStackTrace(new StackTraceElement[]{frame("a.Outer", 9), frame("a.Main", 2), frame("a.Main", 3)});
+
+        assertTrue(TracebackRenderer.DEFAULT.render("failed", e).endsWith("Caused by: java.lang.IllegalArgumentException: root"
+                + NL + "\t\ta.Inner.run(Source.java:1)" + NL + "\t\t... 2 more"));
+    }
+
+    @Test
+    public void trimsAndFolds() {
+        TracebackRenderer renderer = new TracebackRenderer(3, new String[]{"sun.reflect."}, 16);
+        Exception e = new IllegalStateException("boom");
+        e.setStackTrace(new StackTraceElement[]{frame("a.Top", 1), frame("sun.reflect.A", 2),
+                frame("sun.reflect.B", 3), frame("a.Middle", 4), frame("sun.reflect.C", 5), frame("a.Bottom", 6)});
+
+        assertEquals("failed" + NL + "\t\tjava.lang.IllegalStateException: boom"
+                + NL + "\t\ta.Top.run(Source.java:1)"
+                + NL + "\t\t... 2 frames folded"
+                + NL + "\t\ta.Middle.run(Source.java:4)"
+                + NL + "\t\t... 2 more", renderer.render("failed", e));
+    }
+
+    /**
+     * cached frames are only reused for the same stack
+     */
+    @Test
+    public void cachesByStack() {
+        TracebackRenderer renderer = new TracebackRenderer(0, new String[0], 1);
+        Exception first = new IllegalStateException("first");
+        first.setStackTrace(new StackTraceElement[]{frame("a.Main", 1)});
+        Exception again = new IllegalStateException("again");
+        again.setStackTrace(new StackTraceElement[]{frame("a.Main", 1)});
+        Exception other = new IllegalStateException("other");
+        other.setStackTrace(new StackTraceElement[]{frame("a.Main", 2)});
+
+        String suffix = NL + "\t\ta.Main.run(Source.java:1)";
+        assertTrue(renderer.render("x", first).endsWith("first" + suffix));
+        assertTrue(renderer.render("x", again).endsWith("again" + suffix));
+        assertTrue(renderer.render("x", other).endsWith("other" + NL + "\t\ta.Main.run(Source.java:2)"));
+        assertTrue(renderer.render("x", first).endsWith("first" + suffix));
+    }
+}